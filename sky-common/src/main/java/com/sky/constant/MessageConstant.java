@@ -24,5 +24,14 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String TOO_MANY_CONNECTIONS = "推送连接数已达上限，请稍后重试";
+    public static final String NO_SUBSCRIBABLE_TOPICS = "没有可订阅的主题";
+    public static final String TOO_MANY_REQUESTS = "操作过于频繁，请稍后重试";
+    public static final String SERVICE_UNAVAILABLE = "服务繁忙，请稍后重试";
+    public static final String DELIVERY_CHECK_UNAVAILABLE = "暂时无法校验配送范围，请稍后重试";
+    public static final String SHOPPING_CART_BATCH_TOO_LARGE = "一次修改的商品过多";
+    public static final String SHOPPING_CART_DELTA_INVALID = "商品数量变化超出范围";
+    public static final String SHOPPING_CART_QUANTITY_EXCEEDED = "购物车中单个商品的数量超出上限";
+    public static final String SHOPPING_CART_ITEM_NOT_FOUND = "商品不存在";
 
 }
@@ -1,19 +1,153 @@
 package com.sky.context;
 
+import org.slf4j.MDC;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * 请求上下文：当前登录用户id和链路追踪id
+ * 每个请求开始时由拦截器设置、结束时清理，避免Tomcat线程复用时读到上一个请求的用户；
+ * 交给其他线程执行的任务通过 capture/restore 或 wrap 把上下文带过去，追踪id同时写入日志MDC
+ */
 public class BaseContext {
 
-    public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
+    //日志MDC中追踪id的名称，日志格式中用 %X{traceId} 输出
+    public static final String TRACE_ID = "traceId";
+
+    private static final ThreadLocal<Snapshot> threadLocal = new ThreadLocal<>();
 
     public static void setCurrentId(Long id) {
-        threadLocal.set(id);
+        Snapshot current = threadLocal.get();
+        set(new Snapshot(id, current == null ? null : current.traceId));
     }
 
     public static Long getCurrentId() {
-        return threadLocal.get();
+        Snapshot current = threadLocal.get();
+        return current == null ? null : current.userId;
     }
 
     public static void removeCurrentId() {
+        setCurrentId(null);
+    }
+
+    public static void setTraceId(String traceId) {
+        Snapshot current = threadLocal.get();
+        set(new Snapshot(current == null ? null : current.userId, traceId));
+    }
+
+    public static String getTraceId() {
+        Snapshot current = threadLocal.get();
+        return current == null ? null : current.traceId;
+    }
+
+    /**
+     * 清理当前线程的上下文
+     */
+    public static void clear() {
         threadLocal.remove();
+        MDC.remove(TRACE_ID);
+    }
+
+    /**
+     * 获取当前线程上下文的快照
+     *
+     * @return 没有上下文时返回null
+     */
+    public static Snapshot capture() {
+        return threadLocal.get();
+    }
+
+    /**
+     * 用快照替换当前线程的上下文
+     *
+     * @param snapshot 为null时清理上下文
+     * @return 替换前的上下文，任务执行完后用它恢复
+     */
+    public static Snapshot restore(Snapshot snapshot) {
+        Snapshot previous = threadLocal.get();
+        if (snapshot == null) {
+            clear();
+        } else {
+            set(snapshot);
+        }
+        return previous;
+    }
+
+    /**
+     * 包装任务，在执行任务的线程中恢复提交任务时的上下文，执行完后还原该线程原来的上下文
+     *
+     * @param runnable
+     * @return
+     */
+    public static Runnable wrap(Runnable runnable) {
+        Snapshot snapshot = capture();
+        return () -> {
+            Snapshot previous = restore(snapshot);
+            try {
+                runnable.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> callable) {
+        Snapshot snapshot = capture();
+        return () -> {
+            Snapshot previous = restore(snapshot);
+            try {
+                return callable.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * 用于 CompletableFuture.supplyAsync
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> supplier) {
+        Snapshot snapshot = capture();
+        return () -> {
+            Snapshot previous = restore(snapshot);
+            try {
+                return supplier.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void set(Snapshot snapshot) {
+        threadLocal.set(snapshot);
+        if (snapshot.traceId == null) {
+            MDC.remove(TRACE_ID);
+        } else {
+            MDC.put(TRACE_ID, snapshot.traceId);
+        }
+    }
+
+    /**
+     * 不可变的上下文快照，可以安全地在线程之间传递
+     */
+    public static final class Snapshot {
+
+        private final Long userId;
+        private final String traceId;
+
+        private Snapshot(Long userId, String traceId) {
+            this.userId = userId;
+            this.traceId = traceId;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public String getTraceId() {
+            return traceId;
+        }
     }
 
 }
@@ -0,0 +1,33 @@
+package com.sky.context;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 创建传递 BaseContext 的线程池
+ * 提交的 Runnable、Callable 以及以该线程池为参数的 CompletableFuture 任务，都能读到提交时的用户id和追踪id
+ */
+public class ContextExecutors {
+
+    private static final ContextTaskDecorator DECORATOR = new ContextTaskDecorator();
+
+    /**
+     * 创建固定线程数、有界队列的线程池，队列满时提交任务抛出 TaskRejectedException
+     *
+     * @param namePrefix 线程名称前缀
+     * @param threads 线程数
+     * @param queueCapacity 队列容量
+     * @return 已初始化的线程池，由调用方负责 shutdown
+     */
+    public static ThreadPoolTaskExecutor newFixedExecutor(String namePrefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(namePrefix);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(60);
+        executor.setDaemon(true);
+        executor.setTaskDecorator(DECORATOR);
+        executor.initialize();
+        return executor;
+    }
+}
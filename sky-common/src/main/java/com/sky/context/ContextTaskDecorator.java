@@ -0,0 +1,15 @@
+package com.sky.context;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 线程池任务装饰器，把提交任务时的 BaseContext 带到执行任务的线程
+ * 注册为bean后Spring Boot自动配置的线程池（@Async默认使用）也会使用它
+ */
+public class ContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return BaseContext.wrap(runnable);
+    }
+}
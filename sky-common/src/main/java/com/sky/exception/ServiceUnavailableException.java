@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 外部服务熔断或并发已满，调用被拒绝
+ */
+public class ServiceUnavailableException extends BaseException {
+
+    public ServiceUnavailableException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 推送连接数已达上限
+ */
+public class TooManyConnectionsException extends BaseException {
+
+    public TooManyConnectionsException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 文件上传失败异常
+ */
+public class UploadFailedException extends BaseException {
+
+    public UploadFailedException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 购物车存储方式：redis 存储在redis中并异步批量回写数据库，db 直接读写数据库
+     */
+    private String store = "redis";
+
+    /**
+     * 每次回写数据库处理的最大用户数
+     */
+    private int flushBatchSize = 100;
+
+    /**
+     * redis中购物车的过期时间（天），超过该时间没有操作的购物车从redis中淘汰
+     */
+    private int expireDays = 7;
+
+    /**
+     * 超过该天数没有修改的购物车视为废弃，由定时任务整车清理
+     */
+    private int abandonDays = 30;
+
+    /**
+     * 清理废弃购物车时每批删除的用户数
+     */
+    private int compactChunkSize = 500;
+
+    /**
+     * 两批删除之间的停顿时间（毫秒），避免长时间占用表锁和数据库资源
+     */
+    private long compactPauseMillis = 200;
+
+    /**
+     * 批量修改购物车时一次最多提交的商品数
+     */
+    private int maxBatchSize = 50;
+
+    /**
+     * 批量修改购物车时单个商品数量变化的绝对值上限
+     */
+    private int maxDelta = 99;
+
+    /**
+     * 购物车中单个商品的数量上限
+     */
+    private int maxQuantity = 99;
+
+    /**
+     * 每次清理最多执行的批数，剩余的留到下次清理
+     */
+    private int compactMaxChunks = 1000;
+
+}
@@ -0,0 +1,54 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "sky.circuit-breaker")
+@Data
+public class CircuitBreakerProperties {
+
+    /**
+     * 各熔断器的配置，key为熔断器名称（baiduMap、wechatLogin、wechatPay），没有配置的使用默认值
+     */
+    private Map<String, Rule> instances = new HashMap<>();
+
+    @Data
+    public static class Rule {
+
+        /**
+         * 统计最近多少次调用的失败率
+         */
+        private int windowSize = 20;
+
+        /**
+         * 统计窗口内至少有多少次调用才计算失败率
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * 失败率达到该百分比时熔断
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 熔断持续时间（毫秒），之后放少量请求试探
+         */
+        private long openMillis = 30000;
+
+        /**
+         * 试探请求数，全部成功才恢复，任意一次失败重新熔断
+         */
+        private int halfOpenCalls = 3;
+
+        /**
+         * 最大并发调用数，超过时直接拒绝，避免外部接口变慢时占满Tomcat线程
+         */
+        private int maxConcurrent = 20;
+    }
+
+}
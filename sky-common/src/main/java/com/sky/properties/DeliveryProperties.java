@@ -0,0 +1,49 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.delivery")
+@Data
+public class DeliveryProperties {
+
+    /**
+     * 百度地图接口地址，压测时指向本地桩服务
+     */
+    private String mapBaseUrl = "https://api.map.baidu.com";
+
+    /**
+     * 最大配送距离（米），按驾车路线距离计算
+     */
+    private int maxDistanceMeters = 5000;
+
+    /**
+     * 收货地址配送距离的缓存时间（小时），缓存期内同一地址下单不再调用地图接口
+     */
+    private int distanceCacheHours = 24;
+
+    /**
+     * 收货地址经纬度的缓存时间（天），用于地图接口不可用时估算距离
+     */
+    private int locationCacheDays = 30;
+
+    /**
+     * 地图接口熔断或调用失败时的处理方式：
+     * local 用缓存的经纬度按直线距离估算（没有缓存时按 localMissAllow 处理），allow 直接放行，reject 拒绝下单
+     */
+    private String fallback = "local";
+
+    /**
+     * local 方式下没有缓存的经纬度、无法估算距离时是否放行，默认拒绝下单，
+     * 避免地图接口熔断期间所有新地址都跳过配送范围校验
+     */
+    private boolean localMissAllow = false;
+
+    /**
+     * 直线距离换算为路线距离的系数
+     */
+    private double localDistanceFactor = 1.3;
+
+}
@@ -0,0 +1,49 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http-client")
+@Data
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 100;
+
+    /**
+     * 每个目标主机（路由）的最大连接数，避免一个慢接口占满连接池
+     */
+    private int maxPerRoute = 20;
+
+    /**
+     * 建立连接的超时时间（毫秒）
+     */
+    private int connectTimeoutMillis = 2000;
+
+    /**
+     * 等待响应数据的超时时间（毫秒）
+     */
+    private int socketTimeoutMillis = 5000;
+
+    /**
+     * 从连接池获取连接的超时时间（毫秒），连接池耗尽时快速失败
+     */
+    private int connectionRequestTimeoutMillis = 1000;
+
+    /**
+     * 空闲连接保持时间（毫秒），服务端没有返回Keep-Alive头时使用，超过后由后台线程关闭
+     */
+    private long keepAliveMillis = 30000;
+
+    /**
+     * 异步请求的线程数和队列容量
+     */
+    private int asyncThreads = 8;
+
+    private int asyncQueueCapacity = 200;
+
+}
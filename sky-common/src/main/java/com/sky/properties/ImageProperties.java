@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.image")
+@Data
+public class ImageProperties {
+
+    /**
+     * 列表页缩略图宽度（像素）
+     */
+    private int listWidth = 200;
+
+    /**
+     * 详情页图片宽度（像素）
+     */
+    private int detailWidth = 750;
+
+    /**
+     * 生成缩略图的线程数
+     */
+    private int workers = 2;
+
+    /**
+     * 缩略图任务队列容量，队列满时丢弃任务，不影响上传
+     */
+    private int queueCapacity = 100;
+
+}
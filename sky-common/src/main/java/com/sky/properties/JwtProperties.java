@@ -23,4 +23,14 @@ public class JwtProperties {
     private long userTtl;
     private String userTokenName;
 
+    /**
+     * 已校验令牌的缓存数量上限，管理端和用户端各一份
+     */
+    private int verifiedTokenCacheSize = 10000;
+
+    /**
+     * 预计同时处于吊销状态（已吊销且未过期）的令牌数，用于确定布隆过滤器的大小
+     */
+    private int revokedTokenExpectedSize = 10000;
+
 }
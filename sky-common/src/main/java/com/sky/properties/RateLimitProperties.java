@@ -0,0 +1,61 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.rate-limit")
+@Data
+public class RateLimitProperties {
+
+    /**
+     * 是否开启接口限流
+     */
+    private boolean enabled = true;
+
+    /**
+     * 令牌桶存放位置：local 每个实例各自在内存中计数，redis 所有实例共享redis中的令牌桶
+     */
+    private String mode = "local";
+
+    /**
+     * 可信的反向代理地址，支持 10.0.0.0/8 形式的网段；只有直接连接的地址是可信代理时才读取 X-Forwarded-For，
+     * 否则客户端可以伪造该请求头绕过按ip限流
+     */
+    private List<String> trustedProxies = new ArrayList<>(Arrays.asList("127.0.0.1", "::1", "0:0:0:0:0:0:0:1"));
+
+    /**
+     * 限流规则，按顺序匹配，请求路径命中第一条规则即按该规则限流
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+
+        /**
+         * 请求路径，支持 /user/order/reminder/* 形式的通配符
+         */
+        private String path;
+
+        /**
+         * 限流维度：user 按登录用户id（未登录时按ip），ip 按客户端ip
+         */
+        private String key = "ip";
+
+        /**
+         * 令牌桶容量，即允许的突发请求数
+         */
+        private int capacity = 10;
+
+        /**
+         * 每秒补充的令牌数，即长期允许的平均请求速率
+         */
+        private double refillPerSecond = 1;
+    }
+
+}
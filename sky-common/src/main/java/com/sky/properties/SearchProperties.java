@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.search")
+@Data
+public class SearchProperties {
+
+    /**
+     * 订单号、手机号索引只包含最近该天数内的订单；搜索时指定了更早的开始时间则直接查询数据库
+     */
+    private int orderIndexDays = 90;
+
+    /**
+     * 加载订单索引时每次查询的订单数
+     */
+    private int orderLoadPageSize = 5000;
+
+}
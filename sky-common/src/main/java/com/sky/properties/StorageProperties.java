@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.storage")
+@Data
+public class StorageProperties {
+
+    /**
+     * 文件存储方式：oss 阿里云OSS，local 本地磁盘
+     */
+    private String type = "oss";
+
+    /**
+     * 本地存储的根目录
+     */
+    private String localDir = "upload";
+
+    /**
+     * 本地存储文件的访问地址前缀
+     */
+    private String localUrlPrefix = "http://localhost:8080/upload/";
+
+}
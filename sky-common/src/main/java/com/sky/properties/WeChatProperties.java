@@ -19,5 +19,8 @@ public class WeChatProperties {
     private String weChatPayCertFilePath; //平台证书
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
+    private String apiBaseUrl = "https://api.weixin.qq.com"; //微信登录接口地址，压测时指向本地桩服务
+    private String payBaseUrl = "https://api.mch.weixin.qq.com"; //微信支付接口地址，压测时指向本地桩服务
+    private boolean skipResponseValidation = false; //不校验微信支付响应的签名，只能在对接本地桩服务时开启
 
 }
@@ -0,0 +1,84 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个连接待发送消息队列的容量，队列满说明客户端消费太慢，断开该连接
+     */
+    private int sendQueueCapacity = 256;
+
+    /**
+     * 待发布消息队列的容量：发布消息只入队，由发布线程分配序号、写入redis stream并推送；队列满时由调用方线程直接发布
+     */
+    private int publishQueueCapacity = 10000;
+
+    /**
+     * 批量模式（连接参数 batch=1）下的消息收集窗口（毫秒）
+     */
+    private long batchWindowMillis = 50;
+
+    /**
+     * 批量模式下一帧最多包含的消息数
+     */
+    private int batchMaxMessages = 20;
+
+    /**
+     * shop、board 每个主题保留最近推送的消息条数，客户端断线重连时从中补发缺失的消息
+     */
+    private int alertLogCapacity = 1000;
+
+    /**
+     * order:{id}、user:{id} 每个主题在redis stream中保留的消息条数
+     */
+    private int alertLogPrivateCapacity = 50;
+
+    /**
+     * order:{id}、user:{id} 主题的redis stream在最后一条消息之后保留的时间（小时）
+     */
+    private int alertLogPrivateTtlHours = 24;
+
+    /**
+     * 补发时额外补发序号在 lastSeq 之前该范围内的消息：其他实例发布的消息可能晚于序号更大的消息到达，
+     * 只补发大于 lastSeq 的消息会漏掉这些消息，重复的消息由客户端按seq去重
+     */
+    private int alertReplayWindow = 100;
+
+    /**
+     * 是否写入redis stream：开启后所有实例共用stream补发消息，实例重启或客户端重连到其他实例都不会丢失；
+     * 关闭或redis不可用时只能从本机内存补发
+     */
+    private boolean alertStreamEnabled = true;
+
+    /**
+     * 心跳间隔（毫秒），每隔该时间向所有连接发送一次ping
+     */
+    private long heartbeatIntervalMillis = 30000;
+
+    /**
+     * 心跳超时时间（毫秒），超过该时间没有收到客户端的pong或消息，视为断开并清理
+     */
+    private long heartbeatTimeoutMillis = 90000;
+
+    /**
+     * SSE推送（/admin/order/stream）的最大连接数
+     */
+    private int sseMaxConnections = 200;
+
+    /**
+     * SSE连接的超时时间（毫秒），超时后浏览器自动重连并带上 Last-Event-ID 补发消息
+     */
+    private long sseTimeoutMillis = 1800000;
+
+    /**
+     * SSE推送线程数，每个连接的消息由其中一个线程逐条发送，每个连接的待发送队列容量同 sendQueueCapacity
+     */
+    private int ssePushThreads = 4;
+
+}
@@ -4,54 +4,82 @@ import com.aliyun.oss.ClientException;
 import com.aliyun.oss.OSS;
 import com.aliyun.oss.OSSClientBuilder;
 import com.aliyun.oss.OSSException;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import com.aliyun.oss.model.ObjectMetadata;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import java.io.ByteArrayInputStream;
 
-@Data
-@AllArgsConstructor
+import java.io.IOException;
+import java.io.InputStream;
+
+@Getter
 @Slf4j
-public class AliOssUtil {
+public class AliOssUtil implements ObjectStorage {
+
+    private final String endpoint;
+    private final String accessKeyId;
+    private final String accessKeySecret;
+    private final String bucketName;
 
-    private String endpoint;
-    private String accessKeyId;
-    private String accessKeySecret;
-    private String bucketName;
+    //OSSClient是线程安全的，内部自带连接池，整个应用共用一个实例，不再每次上传都创建和关闭
+    private final OSS ossClient;
+
+    public AliOssUtil(String endpoint, String accessKeyId, String accessKeySecret, String bucketName) {
+        this.endpoint = endpoint;
+        this.accessKeyId = accessKeyId;
+        this.accessKeySecret = accessKeySecret;
+        this.bucketName = bucketName;
+        this.ossClient = new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret);
+    }
 
     /**
      * 文件上传
      *
-     * @param bytes
+     * @param inputStream
+     * @param contentLength
      * @param objectName
      * @return
      */
-    public String upload(byte[] bytes, String objectName) {
-
-        // 创建OSSClient实例。
-        OSS ossClient = new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret);
+    public String upload(InputStream inputStream, long contentLength, String objectName) throws IOException {
+        //设置了内容长度，SDK会直接把输入流写到网络上，不会先缓存到内存
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (contentLength >= 0) {
+            metadata.setContentLength(contentLength);
+        }
 
         try {
             // 创建PutObject请求。
-            ossClient.putObject(bucketName, objectName, new ByteArrayInputStream(bytes));
+            ossClient.putObject(bucketName, objectName, inputStream, metadata);
         } catch (OSSException oe) {
-            System.out.println("Caught an OSSException, which means your request made it to OSS, "
-                    + "but was rejected with an error response for some reason.");
-            System.out.println("Error Message:" + oe.getErrorMessage());
-            System.out.println("Error Code:" + oe.getErrorCode());
-            System.out.println("Request ID:" + oe.getRequestId());
-            System.out.println("Host ID:" + oe.getHostId());
+            log.error("OSS拒绝了上传请求，Error Code:{}，Error Message:{}，Request ID:{}",
+                    oe.getErrorCode(), oe.getErrorMessage(), oe.getRequestId());
+            throw new IOException(oe.getErrorMessage(), oe);
         } catch (ClientException ce) {
-            System.out.println("Caught an ClientException, which means the client encountered "
-                    + "a serious internal problem while trying to communicate with OSS, "
-                    + "such as not being able to access the network.");
-            System.out.println("Error Message:" + ce.getMessage());
-        } finally {
-            if (ossClient != null) {
-                ossClient.shutdown();
-            }
+            log.error("OSS客户端异常，可能是网络无法访问：{}", ce.getMessage());
+            throw new IOException(ce.getMessage(), ce);
         }
 
+        String url = getUrl(objectName);
+        log.info("文件上传到:{}", url);
+        return url;
+    }
+
+    /**
+     * 判断文件是否已存在
+     *
+     * @param objectName
+     * @return
+     */
+    public boolean exists(String objectName) {
+        return ossClient.doesObjectExist(bucketName, objectName);
+    }
+
+    /**
+     * 文件访问路径
+     *
+     * @param objectName
+     * @return
+     */
+    public String getUrl(String objectName) {
         //文件访问路径规则 https://BucketName.Endpoint/ObjectName
         StringBuilder stringBuilder = new StringBuilder("https://");
         stringBuilder
@@ -60,9 +88,13 @@ public class AliOssUtil {
                 .append(endpoint)
                 .append("/")
                 .append(objectName);
-
-        log.info("文件上传到:{}", stringBuilder.toString());
-
         return stringBuilder.toString();
     }
+
+    /**
+     * 应用关闭时释放OSSClient
+     */
+    public void shutdown() {
+        ossClient.shutdown();
+    }
 }
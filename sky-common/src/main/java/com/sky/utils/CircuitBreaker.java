@@ -0,0 +1,188 @@
+package com.sky.utils;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.BaseException;
+import com.sky.exception.ServiceUnavailableException;
+import com.sky.properties.CircuitBreakerProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * 外部接口调用的熔断器，同时限制并发数（舱壁）
+ * 关闭：正常调用，统计最近 windowSize 次调用的失败率，达到阈值后熔断
+ * 熔断：直接拒绝，不再调用外部接口，openMillis 后进入试探
+ * 试探：放行 halfOpenCalls 次调用，全部成功则恢复，任意一次失败重新熔断
+ * 业务异常（BaseException）说明外部接口正常返回了结果，不计为失败
+ * 每次状态切换递增代数，调用放行时记下当时的代数，结束时代数已变化的结果不再统计，
+ * 避免关闭时发出、试探期间才返回的慢调用被当作试探结果
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final CircuitBreakerProperties.Rule rule;
+    private final Semaphore bulkhead;
+
+    //最近调用结果的环形缓冲，true表示失败
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    //状态代数，每次状态切换加一
+    private long generation;
+
+    public CircuitBreaker(String name, CircuitBreakerProperties.Rule rule) {
+        this.name = name;
+        this.rule = rule;
+        this.bulkhead = new Semaphore(rule.getMaxConcurrent());
+        this.window = new boolean[rule.getWindowSize()];
+    }
+
+    /**
+     * 调用外部接口，熔断、并发已满或调用失败时返回降级结果
+     *
+     * @param action 外部接口调用
+     * @param fallback 降级逻辑，参数为失败原因
+     * @return
+     */
+    public <T> T execute(Callable<T> action, Function<Exception, T> fallback) {
+        try {
+            return call(action);
+        } catch (ServiceUnavailableException e) {
+            return fallback.apply(e);
+        } catch (BaseException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("{}调用失败，使用降级结果：{}", name, e.toString());
+            return fallback.apply(e);
+        }
+    }
+
+    /**
+     * 调用外部接口，熔断或并发已满时抛出 ServiceUnavailableException，调用失败时原样抛出异常
+     *
+     * @param action
+     * @return
+     * @throws Exception
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        if (!bulkhead.tryAcquire()) {
+            throw new ServiceUnavailableException(MessageConstant.SERVICE_UNAVAILABLE);
+        }
+        try {
+            long permitted = acquirePermission();
+            if (permitted < 0) {
+                throw new ServiceUnavailableException(MessageConstant.SERVICE_UNAVAILABLE);
+            }
+            boolean success = false;
+            try {
+                T result = action.call();
+                success = true;
+                return result;
+            } catch (BaseException e) {
+                success = true;
+                throw e;
+            } finally {
+                onComplete(permitted, success);
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return 放行时返回当前代数，拒绝时返回-1
+     */
+    private synchronized long acquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < rule.getOpenMillis()) {
+                return -1;
+            }
+            log.info("{}熔断结束，开始试探", name);
+            transitionTo(State.HALF_OPEN);
+            halfOpenPermits = rule.getHalfOpenCalls();
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits <= 0) {
+                return -1;
+            }
+            halfOpenPermits--;
+        }
+        return generation;
+    }
+
+    /**
+     * @param permitted 放行时的代数
+     * @param success
+     */
+    private synchronized void onComplete(long permitted, boolean success) {
+        if (permitted != generation) {
+            //放行之后状态已经切换（例如关闭时发出的调用在熔断或试探期间才返回），结果不再统计
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                open();
+            } else if (++halfOpenSuccesses >= rule.getHalfOpenCalls()) {
+                log.info("{}试探成功，恢复调用", name);
+                transitionTo(State.CLOSED);
+                resetWindow();
+            }
+            return;
+        }
+
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = !success;
+        if (!success) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+
+        if (windowCalls >= rule.getMinimumCalls()
+                && windowFailures * 100 >= rule.getFailureRateThreshold() * windowCalls) {
+            open();
+        }
+    }
+
+    private void open() {
+        log.warn("{}熔断，{}毫秒内不再调用", name, rule.getOpenMillis());
+        transitionTo(State.OPEN);
+        openedAt = System.currentTimeMillis();
+        resetWindow();
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        generation++;
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.sky.utils;
+
+import com.sky.properties.CircuitBreakerProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按名称获取熔断器，同一名称共用一个熔断器实例
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    @Autowired
+    private CircuitBreakerProperties circuitBreakerProperties;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * 获取熔断器，没有单独配置的使用默认配置
+     * @param name
+     * @return
+     */
+    public CircuitBreaker get(String name) {
+        return circuitBreakers.computeIfAbsent(name, k -> {
+            CircuitBreakerProperties.Rule rule = circuitBreakerProperties.getInstances().get(k);
+            return new CircuitBreaker(k, rule != null ? rule : new CircuitBreakerProperties.Rule());
+        });
+    }
+
+    /**
+     * 各熔断器的当前状态
+     * @return
+     */
+    public Map<String, String> getStates() {
+        Map<String, String> states = new LinkedHashMap<>();
+        circuitBreakers.forEach((name, circuitBreaker) -> states.put(name, circuitBreaker.getState().name()));
+        return states;
+    }
+}
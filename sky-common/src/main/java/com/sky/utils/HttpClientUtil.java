@@ -1,45 +1,110 @@
 package com.sky.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import com.sky.context.ContextExecutors;
+import com.sky.properties.HttpClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Http工具类
+ * 所有请求共用一个带连接池的HttpClient，连接按目标主机复用（keep-alive），省去每次请求的TCP/TLS握手；
+ * 连接、读取、从连接池获取连接都有超时，外部接口变慢时不会一直占住请求线程
  */
+@Slf4j
 public class HttpClientUtil {
 
-    static final  int TIMEOUT_MSEC = 5 * 1000;
+    //目标主机 -> 请求统计
+    private static final Map<String, HttpHostMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile ThreadPoolTaskExecutor asyncExecutor;
+
+    static {
+        //默认配置，应用启动后由 configure 按配置文件替换
+        configure(new HttpClientProperties());
+    }
+
+    /**
+     * 按配置重建连接池和异步线程池，原来的连接池和线程池随后关闭
+     * @param properties
+     */
+    public static synchronized void configure(HttpClientProperties properties) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+        //空闲超过2秒的连接复用前先检查是否已被服务端关闭
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeoutMillis())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeoutMillis())
+                .setSocketTimeout(properties.getSocketTimeoutMillis()).build();
+
+        long keepAliveMillis = properties.getKeepAliveMillis();
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                //服务端通过Keep-Alive头指定的保持时间不超过配置值
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        ThreadPoolTaskExecutor executor = ContextExecutors.newFixedExecutor("http-async-",
+                properties.getAsyncThreads(), properties.getAsyncQueueCapacity());
+
+        CloseableHttpClient oldClient = httpClient;
+        ThreadPoolTaskExecutor oldExecutor = asyncExecutor;
+        httpClient = client;
+        asyncExecutor = executor;
+        close(oldClient, oldExecutor);
+    }
+
+    /**
+     * 关闭连接池和异步线程池
+     */
+    public static synchronized void shutdown() {
+        close(httpClient, asyncExecutor);
+    }
 
     /**
      * 发送GET方式请求
      * @param url
      * @param paramMap
-     * @return
+     * @return 响应状态不是200或请求失败时返回空串
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
-        String result = "";
-        CloseableHttpResponse response = null;
-
         try{
             URIBuilder builder = new URIBuilder(url);
             if(paramMap != null){
@@ -53,24 +118,26 @@ public class HttpClientUtil {
             HttpGet httpGet = new HttpGet(uri);
 
             //发送请求
-            response = httpClient.execute(httpGet);
-
-            //判断响应状态
-            if(response.getStatusLine().getStatusCode() == 200){
-                result = EntityUtils.toString(response.getEntity(),"UTF-8");
-            }
+            return execute(httpGet, true);
         }catch (Exception e){
-            e.printStackTrace();
-        }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            log.warn("GET请求失败：{}，{}", url, e.toString());
+            return "";
         }
+    }
 
-        return result;
+    /**
+     * 异步发送GET方式请求，在传递请求上下文的线程池中执行
+     * 线程池队列已满时在当前线程中执行
+     * @param url
+     * @param paramMap
+     * @return
+     */
+    public static CompletableFuture<String> doGetAsync(String url, Map<String, String> paramMap) {
+        try {
+            return CompletableFuture.supplyAsync(() -> doGet(url, paramMap), asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(doGet(url, paramMap));
+        }
     }
 
     /**
@@ -81,43 +148,22 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
-
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            // 创建参数列表
-            if (paramMap != null) {
-                List<NameValuePair> paramList = new ArrayList();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
-                }
-                // 模拟表单
-                UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
-                httpPost.setEntity(entity);
-            }
-
-            httpPost.setConfig(builderRequestConfig());
-
-            // 执行http请求
-            response = httpClient.execute(httpPost);
-
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
+
+        // 创建参数列表
+        if (paramMap != null) {
+            List<NameValuePair> paramList = new ArrayList();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
             }
+            // 模拟表单
+            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
+            httpPost.setEntity(entity);
         }
 
-        return resultString;
+        // 执行http请求
+        return execute(httpPost, false);
     }
 
     /**
@@ -128,52 +174,76 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
-
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            if (paramMap != null) {
-                //构造json格式数据
-                JSONObject jsonObject = new JSONObject();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    jsonObject.put(param.getKey(),param.getValue());
-                }
-                StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
-                //设置请求编码
-                entity.setContentEncoding("utf-8");
-                //设置数据类型
-                entity.setContentType("application/json");
-                httpPost.setEntity(entity);
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
+
+        if (paramMap != null) {
+            //构造json格式数据
+            JSONObject jsonObject = new JSONObject();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                jsonObject.put(param.getKey(),param.getValue());
             }
+            StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
+            //设置请求编码
+            entity.setContentEncoding("utf-8");
+            //设置数据类型
+            entity.setContentType("application/json");
+            httpPost.setEntity(entity);
+        }
 
-            httpPost.setConfig(builderRequestConfig());
+        // 执行http请求
+        return execute(httpPost, false);
+    }
 
-            // 执行http请求
-            response = httpClient.execute(httpPost);
+    /**
+     * 各目标主机的请求统计
+     * @return
+     */
+    public static Map<String, HttpHostMetrics> getHostMetrics() {
+        return Collections.unmodifiableMap(METRICS);
+    }
 
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
+    /**
+     * 执行请求并读取响应，同时记录目标主机的耗时和失败次数
+     * @param request
+     * @param okOnly 为true时响应状态不是200返回空串
+     * @return
+     * @throws IOException
+     */
+    private static String execute(HttpRequestBase request, boolean okOnly) throws IOException {
+        URI uri = request.getURI();
+        String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        long start = System.nanoTime();
+        boolean success = false;
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            String result;
+            if (okOnly && status != 200) {
+                //读完响应体，连接才能归还连接池复用
+                EntityUtils.consume(entity);
+                result = "";
+            } else {
+                result = entity == null ? "" : EntityUtils.toString(entity, "UTF-8");
+            }
+            success = status < 500;
+            return result;
         } finally {
+            METRICS.computeIfAbsent(host, k -> new HttpHostMetrics()).record(System.nanoTime() - start, success);
+        }
+    }
+
+    private static void close(CloseableHttpClient client, ThreadPoolTaskExecutor executor) {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (client != null) {
             try {
-                response.close();
+                client.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                log.warn("关闭HttpClient失败：{}", e.toString());
             }
         }
-
-        return resultString;
-    }
-    private static RequestConfig builderRequestConfig() {
-        return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
     }
 
 }
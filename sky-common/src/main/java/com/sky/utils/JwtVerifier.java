@@ -0,0 +1,130 @@
+package com.sky.utils;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * jwt校验器，缓存已校验通过的令牌
+ * 同一个令牌会在有效期内被反复使用，命中缓存时只需计算一次令牌摘要并查表，
+ * 不再重复进行base64解码、签名校验和claims解析；签名秘钥的字节在创建时计算一次
+ */
+public class JwtVerifier {
+
+    private final byte[] signingKey;
+    private final int maxSize;
+
+    //令牌的SHA-256摘要 -> 校验通过的claims，不保存令牌原文
+    private final Map<String, CachedClaims> cache = new ConcurrentHashMap<>();
+
+    //根据令牌摘要判断令牌是否已被吊销，为null时不检查
+    private Predicate<String> revocationChecker;
+
+    /**
+     * @param secretKey jwt秘钥
+     * @param maxSize   缓存的令牌数上限
+     */
+    public JwtVerifier(String secretKey, int maxSize) {
+        this.signingKey = secretKey.getBytes(StandardCharsets.UTF_8);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 设置令牌吊销检查
+     *
+     * @param revocationChecker 参数为令牌摘要（见 digest 方法），返回true表示已吊销
+     */
+    public void setRevocationChecker(Predicate<String> revocationChecker) {
+        this.revocationChecker = revocationChecker;
+    }
+
+    /**
+     * 校验令牌
+     *
+     * @param token
+     * @return 令牌中的claims，不要修改
+     * @throws io.jsonwebtoken.JwtException 令牌无效、已过期或已吊销
+     */
+    public Claims verify(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("token is null");
+        }
+        String digest = digest(token);
+        if (revocationChecker != null && revocationChecker.test(digest)) {
+            cache.remove(digest);
+            throw new JwtException("JWT revoked");
+        }
+        long now = System.currentTimeMillis();
+        CachedClaims cached = cache.get(digest);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                return cached.claims;
+            }
+            cache.remove(digest);
+            throw new ExpiredJwtException(null, cached.claims, "JWT expired");
+        }
+
+        Claims claims = Jwts.parser()
+                .setSigningKey(signingKey)
+                .parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            if (cache.size() >= maxSize) {
+                evict(now);
+            }
+            cache.put(digest, new CachedClaims(claims, expiration.getTime()));
+        }
+        return claims;
+    }
+
+    /**
+     * 缓存已满时先清理过期的令牌，仍然超过上限时随机淘汰一半
+     */
+    private void evict(long now) {
+        cache.values().removeIf(cached -> cached.expiresAt <= now);
+        if (cache.size() < maxSize) {
+            return;
+        }
+        Iterator<String> iterator = cache.keySet().iterator();
+        for (int i = cache.size() / 2; i > 0 && iterator.hasNext(); i--) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 令牌的摘要，缓存和吊销记录都以摘要代替令牌原文
+     *
+     * @param token
+     * @return SHA-256摘要的base64编码
+     */
+    public static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CachedClaims {
+        private final Claims claims;
+        private final long expiresAt;
+
+        private CachedClaims(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sky.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 本地磁盘文件存储，用于没有OSS的开发、测试环境
+ */
+@Slf4j
+public class LocalStorageUtil implements ObjectStorage {
+
+    private final Path baseDir;
+    private final String urlPrefix;
+
+    public LocalStorageUtil(String baseDir, String urlPrefix) {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        this.urlPrefix = urlPrefix.endsWith("/") ? urlPrefix : urlPrefix + "/";
+    }
+
+    /**
+     * 文件上传
+     * 先写入同目录下的临时文件再原子重命名，避免读到写了一半的文件
+     *
+     * @param inputStream
+     * @param contentLength
+     * @param objectName
+     * @return
+     */
+    public String upload(InputStream inputStream, long contentLength, String objectName) throws IOException {
+        Path target = resolve(objectName);
+        Files.createDirectories(target.getParent());
+
+        Path temp = Files.createTempFile(target.getParent(), ".upload", ".tmp");
+        try {
+            Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        String url = getUrl(objectName);
+        log.info("文件上传到:{}", url);
+        return url;
+    }
+
+    /**
+     * 判断文件是否已存在
+     *
+     * @param objectName
+     * @return
+     */
+    public boolean exists(String objectName) {
+        try {
+            return Files.exists(resolve(objectName));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 文件访问路径
+     *
+     * @param objectName
+     * @return
+     */
+    public String getUrl(String objectName) {
+        return urlPrefix + objectName;
+    }
+
+    /**
+     * 对象名称转换为本地路径，不允许跳出存储目录
+     */
+    private Path resolve(String objectName) throws IOException {
+        Path target = baseDir.resolve(objectName).normalize();
+        if (!target.startsWith(baseDir)) {
+            throw new IOException("非法的文件名称：" + objectName);
+        }
+        return target;
+    }
+
+    public Path getBaseDir() {
+        return baseDir;
+    }
+}
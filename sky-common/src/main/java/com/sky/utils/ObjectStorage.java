@@ -0,0 +1,37 @@
+package com.sky.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 对象存储，文件上传统一入口，具体实现有阿里云OSS和本地磁盘两种
+ */
+public interface ObjectStorage {
+
+    /**
+     * 以流的方式上传文件，不会把整个文件读入内存
+     *
+     * @param inputStream   文件输入流，由调用方负责关闭
+     * @param contentLength 文件大小，未知时传-1
+     * @param objectName    对象名称
+     * @return 文件访问路径
+     * @throws IOException
+     */
+    String upload(InputStream inputStream, long contentLength, String objectName) throws IOException;
+
+    /**
+     * 判断对象是否已存在
+     *
+     * @param objectName 对象名称
+     * @return
+     */
+    boolean exists(String objectName);
+
+    /**
+     * 获取对象的访问路径
+     *
+     * @param objectName 对象名称
+     * @return
+     */
+    String getUrl(String objectName);
+}
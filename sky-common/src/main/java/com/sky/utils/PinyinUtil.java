@@ -0,0 +1,65 @@
+package com.sky.utils;
+
+import java.nio.charset.Charset;
+
+/**
+ * 拼音工具类
+ * GB2312一级汉字（常用字）是按拼音顺序编码的，根据区位码落在哪个区间即可得到拼音首字母，无需引入拼音字典
+ */
+public class PinyinUtil {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    //各拼音首字母在GB2312中的起始区位码，最后一个值为一级汉字的结束位置
+    private static final int[] SEC_POS_VALUES = {
+            1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212, 3472,
+            3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590};
+
+    private static final char[] FIRST_LETTERS = {
+            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'j', 'k', 'l', 'm',
+            'n', 'o', 'p', 'q', 'r', 's', 't', 'w', 'x', 'y', 'z'};
+
+    /**
+     * 获取字符串的拼音首字母，例如：宫保鸡丁 -> gbjd
+     * 英文、数字转为小写保留，无法识别的汉字（二级汉字、生僻字）原样保留
+     *
+     * @param text
+     * @return
+     */
+    public static String getInitials(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder stringBuilder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            stringBuilder.append(getInitial(text.charAt(i)));
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 获取单个字符的拼音首字母
+     *
+     * @param c
+     * @return
+     */
+    public static char getInitial(char c) {
+        if (c < 0x80) {
+            return Character.toLowerCase(c);
+        }
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return c;
+        }
+        int secPos = ((bytes[0] & 0xff) - 160) * 100 + ((bytes[1] & 0xff) - 160);
+        if (secPos < SEC_POS_VALUES[0] || secPos >= SEC_POS_VALUES[SEC_POS_VALUES.length - 1]) {
+            return c;
+        }
+        for (int i = FIRST_LETTERS.length - 1; i >= 0; i--) {
+            if (secPos >= SEC_POS_VALUES[i]) {
+                return FIRST_LETTERS[i];
+            }
+        }
+        return c;
+    }
+}
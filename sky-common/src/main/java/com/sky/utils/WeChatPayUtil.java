@@ -2,24 +2,31 @@ package com.sky.utils;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
 import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -28,28 +35,66 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 微信支付工具类
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
-    //微信支付下单接口地址
-    public static final String JSAPI = "https://api.mch.weixin.qq.com/v3/pay/transactions/jsapi";
+    //微信支付下单接口路径，地址前缀由 sky.wechat.pay-base-url 配置
+    public static final String JSAPI = "/v3/pay/transactions/jsapi";
+
+    //申请退款接口路径
+    public static final String REFUNDS = "/v3/refund/domestic/refunds";
 
-    //申请退款接口地址
-    public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
+    //调用微信支付接口使用的熔断器名称，熔断或并发已满时直接抛出 ServiceUnavailableException
+    public static final String CIRCUIT_BREAKER = "wechatPay";
 
     @Autowired
     private WeChatProperties weChatProperties;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    //调用微信支付接口的客户端，第一次调用时创建，之后复用连接池
+    private volatile CloseableHttpClient httpClient;
 
     /**
-     * 获取调用微信接口的客户端工具对象
+     * 获取调用微信接口的客户端工具对象，超时和连接池大小与其他外部接口相同（sky.http-client）
      *
      * @return
      */
     private CloseableHttpClient getClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = buildClient();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        CloseableHttpClient client = httpClient;
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.warn("关闭微信支付HttpClient失败：{}", e.toString());
+            }
+        }
+    }
+
+    private CloseableHttpClient buildClient() {
         PrivateKey merchantPrivateKey = null;
         try {
             //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
@@ -62,10 +107,27 @@ public class WeChatPayUtil {
             WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
                     .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
                     .withWechatPay(wechatPayCertificates);
+            if (weChatProperties.isSkipResponseValidation()) {
+                //本地桩服务没有微信支付平台私钥，无法对响应签名
+                log.warn("已关闭微信支付响应签名校验，只能用于对接本地桩服务");
+                builder.withValidator(response -> true);
+            }
+
+            //只访问微信支付一个主机，连接池总数与单个主机的上限相同
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(httpClientProperties.getMaxPerRoute());
+            connectionManager.setDefaultMaxPerRoute(httpClientProperties.getMaxPerRoute());
+            connectionManager.setValidateAfterInactivity(2000);
+            builder.setConnectionManager(connectionManager);
+            builder.setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectTimeout(httpClientProperties.getConnectTimeoutMillis())
+                    .setConnectionRequestTimeout(httpClientProperties.getConnectionRequestTimeoutMillis())
+                    .setSocketTimeout(httpClientProperties.getSocketTimeoutMillis()).build());
+            builder.evictExpiredConnections();
+            builder.evictIdleConnections(httpClientProperties.getKeepAliveMillis(), TimeUnit.MILLISECONDS);
 
             // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
+            return builder.build();
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return null;
@@ -80,22 +142,23 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        return circuitBreakerRegistry.get(CIRCUIT_BREAKER).call(() -> {
+            CloseableHttpClient httpClient = getClient();
 
-        HttpPost httpPost = new HttpPost(url);
-        httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
-        httpPost.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
-        httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
-        httpPost.setEntity(new StringEntity(body, "UTF-8"));
+            HttpPost httpPost = new HttpPost(url);
+            httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
+            httpPost.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+            httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
+            httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
-        }
+            CloseableHttpResponse response = httpClient.execute(httpPost);
+            try {
+                String bodyAsString = EntityUtils.toString(response.getEntity());
+                return bodyAsString;
+            } finally {
+                response.close();
+            }
+        });
     }
 
     /**
@@ -105,21 +168,22 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        return circuitBreakerRegistry.get(CIRCUIT_BREAKER).call(() -> {
+            CloseableHttpClient httpClient = getClient();
 
-        HttpGet httpGet = new HttpGet(url);
-        httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
-        httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
-        httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
+            HttpGet httpGet = new HttpGet(url);
+            httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
+            httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+            httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
-        }
+            CloseableHttpResponse response = httpClient.execute(httpGet);
+            try {
+                String bodyAsString = EntityUtils.toString(response.getEntity());
+                return bodyAsString;
+            } finally {
+                response.close();
+            }
+        });
     }
 
     /**
@@ -151,7 +215,7 @@ public class WeChatPayUtil {
         jsonObject.put("payer", payer);
 
         String body = jsonObject.toJSONString();
-        return post(JSAPI, body);
+        return post(weChatProperties.getPayBaseUrl() + JSAPI, body);
     }
 
     /**
@@ -230,6 +294,6 @@ public class WeChatPayUtil {
         String body = jsonObject.toJSONString();
 
         //调用申请退款接口
-        return post(REFUNDS, body);
+        return post(weChatProperties.getPayBaseUrl() + REFUNDS, body);
     }
 }
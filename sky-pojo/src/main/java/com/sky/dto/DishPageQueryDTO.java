@@ -3,6 +3,7 @@ package com.sky.dto;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.List;
 
 @Data
 public class DishPageQueryDTO implements Serializable {
@@ -19,4 +20,7 @@ public class DishPageQueryDTO implements Serializable {
     //状态 0表示禁用 1表示启用
     private Integer status;
 
+    //由搜索索引解析出的id集合，非前端传入
+    private List<Long> ids;
+
 }
@@ -5,6 +5,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 public class OrdersPageQueryDTO implements Serializable {
@@ -27,4 +28,7 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //由搜索索引解析出的id集合，非前端传入
+    private List<Long> ids;
+
 }
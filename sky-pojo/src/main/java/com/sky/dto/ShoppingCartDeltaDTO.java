@@ -0,0 +1,19 @@
+package com.sky.dto;
+
+import lombok.Data;
+import java.io.Serializable;
+
+/**
+ * 购物车商品数量变化，客户端合并多次点击后批量提交
+ */
+@Data
+public class ShoppingCartDeltaDTO implements Serializable {
+
+    private Long dishId;
+    private Long setmealId;
+    private String dishFlavor;
+
+    //数量变化，正数为增加，负数为减少
+    private Integer delta;
+
+}
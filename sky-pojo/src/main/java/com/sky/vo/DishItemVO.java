@@ -22,6 +22,9 @@ public class DishItemVO implements Serializable {
     //菜品图片
     private String image;
 
+    //列表页图片，缩略图尚未生成时为原图
+    private String listImage;
+
     //菜品描述
     private String description;
 }
@@ -26,6 +26,10 @@ public class DishVO implements Serializable {
     private BigDecimal price;
     //图片
     private String image;
+    //列表页图片，缩略图尚未生成时为原图
+    private String listImage;
+    //详情页图片，缩略图尚未生成时为原图
+    private String detailImage;
     //描述信息
     private String description;
     //0 停售 1 起售
@@ -0,0 +1,29 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 外部接口按目标主机的调用统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HttpHostStatsVO implements Serializable {
+
+    private String host;//目标主机
+
+    private Long requests;//请求数
+
+    private Long errors;//失败数（异常或5xx响应）
+
+    private Double avgMillis;//平均耗时（毫秒）
+
+    private Double maxMillis;//最大耗时（毫秒）
+
+}
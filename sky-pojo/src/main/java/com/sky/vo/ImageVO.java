@@ -0,0 +1,28 @@
+package com.sky.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "图片上传返回的数据格式")
+public class ImageVO implements Serializable {
+
+    @ApiModelProperty("原图访问路径")
+    private String url;
+
+    @ApiModelProperty("列表页图片访问路径，缩略图尚未生成时为原图")
+    private String listUrl;
+
+    @ApiModelProperty("详情页图片访问路径，缩略图尚未生成时为原图")
+    private String detailUrl;
+
+}
@@ -37,6 +37,12 @@ public class    SetmealVO implements Serializable {
     //图片
     private String image;
 
+    //列表页图片，缩略图尚未生成时为原图
+    private String listImage;
+
+    //详情页图片，缩略图尚未生成时为原图
+    private String detailImage;
+
     //更新时间
     private LocalDateTime updateTime;
 
@@ -0,0 +1,41 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * WebSocket连接与发送统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketStatsVO implements Serializable {
+
+    private Integer sessions;//当前连接数
+
+    private Integer topics;//当前有订阅者的主题数
+
+    private Integer sseConnections;//当前SSE连接数
+
+    private Integer queuedMessages;//所有连接待发送的消息总数
+
+    private Integer maxQueueDepth;//单个连接最大的待发送消息数
+
+    private Long sent;//发送成功的消息数
+
+    private Long failed;//发送失败的消息数
+
+    private Long evicted;//因消费太慢被断开的连接数
+
+    private Long reaped;//心跳超时被清理的连接数
+
+    private Double avgSendMillis;//平均发送耗时（毫秒）
+
+    private Double maxSendMillis;//最大发送耗时（毫秒）
+
+}
@@ -6,20 +6,35 @@ import com.sky.context.BaseContext;
 import com.sky.enumeration.OperationType;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.time.LocalDateTime;
+import java.util.Collection;
 
+/**
+ * 公共字段自动填充
+ * 每个实体类的setter只在第一次填充时查找一次，缓存为MethodHandle，之后的调用不再经过反射查找
+ */
 @Aspect
 @Component
 @Slf4j
 public class AutoFillAspect {
+
+    //实体类 -> 公共字段的setter
+    private static final ClassValue<Setters> SETTERS = new ClassValue<Setters>() {
+        @Override
+        protected Setters computeValue(Class<?> type) {
+            return new Setters(type);
+        }
+    };
+
     /**
      * 切入点
      */
@@ -29,59 +44,89 @@ public class AutoFillAspect {
 
     /**
      * 前置通知，在通知中进行公共字段的赋值
+     * 第一个参数为实体对象或实体集合（批量插入），集合中的每个实体都会被填充
      */
-    // JoinPoint要大写，别导错包
     @Before("autoFillPointCut()")
     public void autoFill(JoinPoint joinPoint){
-        /////////////////////重要////////////////////////////////////
-        //可先进行调试，是否能进入该方法 提前在mapper方法添加AutoFill注解
-        log.info("开始进行公共字段自动填充...");
-//        1. 获取到当前被拦截的方法上的数据库操作类型
+        //1. 获取到当前被拦截的方法上的数据库操作类型
         MethodSignature signature = (MethodSignature) joinPoint.getSignature();
         AutoFill autoFill = signature.getMethod().getAnnotation(AutoFill.class);
         OperationType operationType = autoFill.value();
-//        2. 获取到当前被拦截的方法的参数--实体对象
+
+        //2. 获取到当前被拦截的方法的参数--实体对象
         Object[] args = joinPoint.getArgs();
         if (args==null||args.length==0){
             return;
         }
-        Object entity = args[0];
-//        3. 准备赋值的数据
+        Object arg = args[0];
+
+        //3. 准备赋值的数据
         LocalDateTime now = LocalDateTime.now();
         Long currentId = BaseContext.getCurrentId();
-//        4. 根据当前不同的操作类型，为对应的属性通过反射来赋值
-        if (operationType==OperationType.INSERT){
-            try {
-                Method setCreateTime = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
-                Method setCreateUser = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_CREATE_USER, Long.class);
-                Method setUpdateTime = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
-                Method setUpdateUser = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
-                //通过反射为对象属性赋值
-                setCreateTime.invoke(entity,now);
-                setCreateUser.invoke(entity,currentId);
-                setUpdateTime.invoke(entity,now);
-                setUpdateUser.invoke(entity,currentId);
-            } catch (Exception e) {
-                e.printStackTrace();
+
+        //4. 根据当前不同的操作类型，为对应的属性赋值
+        if (arg instanceof Collection) {
+            for (Object entity : (Collection<?>) arg) {
+                fill(entity, operationType, now, currentId);
             }
-        }else if (operationType==OperationType.UPDATE){
-            try {
-                Method setUpdateTime = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
-                Method setUpdateUser = entity.getClass().
-                        getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
-                //通过反射为对象属性赋值
-                setUpdateTime.invoke(entity,now);
-                setUpdateUser.invoke(entity,currentId);
-            } catch (Exception e) {
-                e.printStackTrace();
+        } else {
+            fill(arg, operationType, now, currentId);
+        }
+        log.debug("公共字段自动填充：{}，{}", signature.getName(), operationType);
+    }
+
+    private static void fill(Object entity, OperationType operationType, LocalDateTime now, Long currentId) {
+        if (entity == null) {
+            return;
+        }
+        Setters setters = SETTERS.get(entity.getClass());
+        try {
+            if (operationType == OperationType.INSERT) {
+                Setters.set(setters.createTime, entity, now);
+                Setters.set(setters.createUser, entity, currentId);
             }
+            Setters.set(setters.updateTime, entity, now);
+            Setters.set(setters.updateUser, entity, currentId);
+        } catch (Throwable e) {
+            log.error("公共字段自动填充失败：{}", entity.getClass().getName(), e);
         }
+    }
 
+    /**
+     * 一个实体类的公共字段setter，实体类没有对应的setter时为null，填充时跳过
+     */
+    private static final class Setters {
+
+        //统一转换为 (Object, Object)void，调用时不需要知道实体的具体类型
+        private static final MethodType GENERIC_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final MethodHandle createTime;
+        private final MethodHandle createUser;
+        private final MethodHandle updateTime;
+        private final MethodHandle updateUser;
+
+        Setters(Class<?> type) {
+            createTime = find(type, AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
+            createUser = find(type, AutoFillConstant.SET_CREATE_USER, Long.class);
+            updateTime = find(type, AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
+            updateUser = find(type, AutoFillConstant.SET_UPDATE_USER, Long.class);
+        }
+
+        static void set(MethodHandle setter, Object entity, Object value) throws Throwable {
+            if (setter != null) {
+                setter.invokeExact(entity, value);
+            }
+        }
+
+        private static MethodHandle find(Class<?> type, String name, Class<?> parameterType) {
+            try {
+                return MethodHandles.publicLookup()
+                        .findVirtual(type, name, MethodType.methodType(void.class, parameterType))
+                        .asType(GENERIC_SETTER);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
     }
 
 }
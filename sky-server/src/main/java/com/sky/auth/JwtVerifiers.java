@@ -0,0 +1,45 @@
+package com.sky.auth;
+
+import com.sky.properties.JwtProperties;
+import com.sky.utils.JwtVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 管理端、用户端的jwt校验器，拦截器、WebSocket握手、退出登录共用，已校验令牌的缓存只有一份
+ */
+@Component
+public class JwtVerifiers {
+
+    @Autowired
+    private JwtProperties jwtProperties;
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    private JwtVerifier admin;
+    private JwtVerifier user;
+
+    @PostConstruct
+    public void init() {
+        admin = new JwtVerifier(jwtProperties.getAdminSecretKey(), jwtProperties.getVerifiedTokenCacheSize());
+        admin.setRevocationChecker(tokenRevocationStore::isRevoked);
+        user = new JwtVerifier(jwtProperties.getUserSecretKey(), jwtProperties.getVerifiedTokenCacheSize());
+        user.setRevocationChecker(tokenRevocationStore::isRevoked);
+    }
+
+    /**
+     * 管理端（员工）令牌校验器
+     */
+    public JwtVerifier getAdmin() {
+        return admin;
+    }
+
+    /**
+     * 用户端令牌校验器
+     */
+    public JwtVerifier getUser() {
+        return user;
+    }
+}
@@ -0,0 +1,167 @@
+package com.sky.auth;
+
+import com.sky.properties.JwtProperties;
+import com.sky.utils.BloomFilter;
+import com.sky.utils.JwtVerifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * 令牌吊销记录
+ * 已吊销令牌的摘要存放在redis有序集合中（分值为令牌过期时间，过期后清理），每个实例在内存中维护一个布隆过滤器：
+ * 绝大多数请求的令牌未被吊销，只需一次内存查询即可放行；布隆过滤器命中时再查询redis确认
+ * 吊销时通过redis发布订阅通知所有实例更新布隆过滤器；每次吊销同时递增redis中的版本号，通知中带有版本号，
+ * 实例与redis断开期间错过的通知由定时任务比较版本号发现，发现后立即重建，不必等到每小时的重建
+ */
+@Component
+@Slf4j
+public class TokenRevocationStore implements MessageListener {
+
+    private static final String REVOKED_KEY = "jwt:revoked";
+    private static final String CHANNEL = "jwt:revoked";
+    private static final String VERSION_KEY = "jwt:revoked:version";
+
+    //布隆过滤器的误判率
+    private static final double FPP = 0.001;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    //重建时整体替换，修改和替换都在this上同步
+    private volatile BloomFilter bloomFilter;
+
+    //上次重建时redis中的版本号，以及之后收到的版本号更大的通知数，都在this上同步
+    private long baseVersion;
+    private long received;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        rebuild();
+    }
+
+    /**
+     * 吊销令牌
+     *
+     * @param token
+     * @param expiresAt 令牌的过期时间（毫秒时间戳），过期后吊销记录被清理
+     */
+    public void revoke(String token, long expiresAt) {
+        String digest = JwtVerifier.digest(token);
+        stringRedisTemplate.opsForZSet().add(REVOKED_KEY, digest, expiresAt);
+        //先写入吊销记录再递增版本号，重建时读到的版本号之前的吊销记录都已写入
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        synchronized (this) {
+            bloomFilter.put(digest);
+        }
+        stringRedisTemplate.convertAndSend(CHANNEL, version + ":" + digest);
+    }
+
+    /**
+     * 令牌是否已吊销
+     *
+     * @param digest 令牌摘要
+     * @return
+     */
+    public boolean isRevoked(String digest) {
+        if (!bloomFilter.mightContain(digest)) {
+            return false;
+        }
+        try {
+            return stringRedisTemplate.opsForZSet().score(REVOKED_KEY, digest) != null;
+        } catch (Exception e) {
+            //布隆过滤器命中且无法确认时按已吊销处理
+            log.warn("查询令牌吊销记录失败", e);
+            return true;
+        }
+    }
+
+    /**
+     * 收到吊销通知（包括本实例发出的），消息格式为 版本号:令牌摘要，旧版本实例发出的通知只有令牌摘要
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int colon = body.indexOf(':');
+        long version = 0;
+        if (colon >= 0) {
+            try {
+                version = Long.parseLong(body.substring(0, colon));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析令牌吊销通知：{}", body);
+                return;
+            }
+        }
+        synchronized (this) {
+            bloomFilter.put(body.substring(colon + 1));
+            if (version > baseVersion) {
+                received++;
+            }
+        }
+    }
+
+    /**
+     * 比较redis中的版本号与已收到的通知，有通知丢失时立即重建
+     */
+    public void syncIfStale() {
+        String value;
+        try {
+            value = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        } catch (Exception e) {
+            log.warn("读取令牌吊销版本号失败", e);
+            return;
+        }
+        long version = value == null ? 0 : Long.parseLong(value);
+        synchronized (this) {
+            if (version <= baseVersion + received) {
+                return;
+            }
+            log.warn("令牌吊销通知有丢失，重建布隆过滤器，版本号：{}，已收到：{}", version, baseVersion + received);
+            rebuild();
+        }
+    }
+
+    /**
+     * 清理已过期令牌的吊销记录，并按当前记录重建布隆过滤器（布隆过滤器不支持删除）
+     */
+    public synchronized void rebuild() {
+        BloomFilter rebuilt = new BloomFilter(jwtProperties.getRevokedTokenExpectedSize(), FPP);
+        long version = 0;
+        try {
+            //先读版本号再读吊销记录，版本号不大于它的吊销都已包含在读到的记录中
+            String value = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+            version = value == null ? 0 : Long.parseLong(value);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, 0, System.currentTimeMillis());
+            Set<String> digests = stringRedisTemplate.opsForZSet().range(REVOKED_KEY, 0, -1);
+            if (digests != null) {
+                digests.forEach(rebuilt::put);
+                if (digests.size() > jwtProperties.getRevokedTokenExpectedSize()) {
+                    log.warn("已吊销的令牌数{}超过预计数量，布隆过滤器误判率升高", digests.size());
+                }
+            }
+        } catch (Exception e) {
+            log.error("加载令牌吊销记录失败", e);
+            if (bloomFilter != null) {
+                //保留原过滤器，下次重建时再试
+                return;
+            }
+        }
+        bloomFilter = rebuilt;
+        baseVersion = version;
+        received = 0;
+    }
+}
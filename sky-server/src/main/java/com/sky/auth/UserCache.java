@@ -0,0 +1,40 @@
+package com.sky.auth;
+
+import com.sky.entity.User;
+import com.sky.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+/**
+ * 微信用户缓存，按openid缓存，登录时不再每次都查询数据库
+ * 用户注册后写入缓存；查不到的用户不缓存，避免新用户注册后仍命中空值
+ */
+@Component
+public class UserCache {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 根据openid查询用户
+     * @param openid
+     * @return
+     */
+    @Cacheable(cacheNames = "userByOpenid", key = "#openid", unless = "#result == null")
+    public User getByOpenid(String openid) {
+        return userMapper.getById(openid);
+    }
+
+    /**
+     * 注册新用户
+     * @param user
+     * @return
+     */
+    @CachePut(cacheNames = "userByOpenid", key = "#result.openid")
+    public User register(User user) {
+        userMapper.insert(user);
+        return user;
+    }
+}
@@ -0,0 +1,57 @@
+package com.sky.cart;
+
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.dto.ShoppingCartDeltaDTO;
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储，屏蔽购物车数据存放在数据库还是redis
+ * 单个商品的数量上限：redis存储在脚本中检查，超过时抛出 ShoppingCartBusinessException；
+ * 数据库存储在插入语句中截断为上限，不抛出异常
+ */
+public interface CartStore {
+
+    /**
+     * 购物车中的商品数量加1，不存在时新增
+     * @param userId
+     * @param shoppingCartDTO
+     */
+    void add(Long userId, ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 购物车中的商品数量减1，减到0时删除
+     * @param userId
+     * @param shoppingCartDTO
+     */
+    void sub(Long userId, ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 查询用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+
+    /**
+     * 批量加入购物车，商品信息和数量取自参数（再来一单）
+     * @param userId
+     * @param shoppingCartList
+     */
+    void addAll(Long userId, List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 批量修改购物车中商品的数量，数量减到0及以下的商品删除
+     * redis存储在任一商品修改后的数量超过上限时整批不修改
+     * @param userId
+     * @param deltas 已按商品合并的数量变化
+     */
+    void applyDeltas(Long userId, List<ShoppingCartDeltaDTO> deltas);
+}
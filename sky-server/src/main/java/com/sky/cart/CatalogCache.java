@@ -0,0 +1,53 @@
+package com.sky.cart;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.exception.ShoppingCartBusinessException;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+/**
+ * 菜品、套餐信息缓存，加入购物车时补全名称、图片、价格，避免每次都查询数据库
+ * 管理端修改、删除菜品或套餐时清理对应缓存
+ * 不存在的菜品或套餐不缓存，抛出 ShoppingCartBusinessException
+ */
+@Component
+public class CatalogCache {
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    /**
+     * 根据id查询菜品
+     * @param id
+     * @return
+     */
+    @Cacheable(cacheNames = "catalogDish", key = "#id", unless = "#result == null")
+    public Dish getDish(Long id) {
+        Dish dish = dishMapper.getById(id);
+        if (dish == null) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_ITEM_NOT_FOUND);
+        }
+        return dish;
+    }
+
+    /**
+     * 根据id查询套餐
+     * @param id
+     * @return
+     */
+    @Cacheable(cacheNames = "catalogSetmeal", key = "#id", unless = "#result == null")
+    public Setmeal getSetmeal(Long id) {
+        Setmeal setmeal = setmealMapper.getById(id);
+        if (setmeal == null) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_ITEM_NOT_FOUND);
+        }
+        return setmeal;
+    }
+}
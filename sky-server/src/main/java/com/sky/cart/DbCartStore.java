@@ -0,0 +1,105 @@
+package com.sky.cart;
+
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.dto.ShoppingCartDeltaDTO;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于数据库的购物车存储，每次操作直接读写shopping_cart表
+ * 同一商品只有一条记录（uk_user_item 唯一索引），加一份、减一份都是单条原子语句，连续快速点击不会产生重复记录
+ * 单个商品的数量上限在同一条语句中截断（least），已达上限时再加一份不生效，不抛出异常
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "db")
+public class DbCartStore implements CartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private CatalogCache catalogCache;
+    @Autowired
+    private CartProperties cartProperties;
+
+    public void add(Long userId, ShoppingCartDTO shoppingCartDTO) {
+        //不存在则插入数量为1的记录，已存在则数量加1
+        ShoppingCart shoppingCart = newItem(userId, shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(),
+                shoppingCartDTO.getDishFlavor(), 1);
+        shoppingCartMapper.insertOrIncrement(shoppingCart, cartProperties.getMaxQuantity());
+    }
+
+    public void sub(Long userId, ShoppingCartDTO shoppingCartDTO) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .dishId(shoppingCartDTO.getDishId())
+                .setmealId(shoppingCartDTO.getSetmealId())
+                .dishFlavor(shoppingCartDTO.getDishFlavor())
+                .build();
+        //多份则减1，没有减到说明只剩1份（或不存在），直接删除
+        if (shoppingCartMapper.decrementNumber(shoppingCart) == 0) {
+            shoppingCartMapper.deleteLastOne(shoppingCart);
+        }
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    public void clean(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+
+    public void addAll(Long userId, List<ShoppingCart> shoppingCartList) {
+        shoppingCartMapper.insertBatch(shoppingCartList, cartProperties.getMaxQuantity());
+    }
+
+    public void applyDeltas(Long userId, List<ShoppingCartDeltaDTO> deltas) {
+        //多行 insert ... on duplicate key update number = number + 变化量，不存在的商品以变化量插入
+        List<ShoppingCart> shoppingCartList = new ArrayList<>(deltas.size());
+        for (ShoppingCartDeltaDTO delta : deltas) {
+            shoppingCartList.add(newItem(userId, delta.getDishId(), delta.getSetmealId(), delta.getDishFlavor(), delta.getDelta()));
+        }
+        shoppingCartMapper.insertBatch(shoppingCartList, cartProperties.getMaxQuantity());
+        //再删除数量减到0及以下的商品
+        shoppingCartMapper.deleteNotPositive(userId);
+    }
+
+    /**
+     * 构造购物车记录，判断是菜品还是套餐，名称、图片、价格从缓存中获取
+     */
+    private ShoppingCart newItem(Long userId, Long dishId, Long setmealId, String dishFlavor, Integer number) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .dishId(dishId)
+                .setmealId(setmealId)
+                .dishFlavor(dishFlavor)
+                .number(number)
+                .createTime(LocalDateTime.now())
+                .build();
+        if (dishId != null) {
+            Dish dish = catalogCache.getDish(dishId);
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
+        } else {
+            Setmeal setmeal = catalogCache.getSetmeal(setmealId);
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
+        }
+        return shoppingCart;
+    }
+}
@@ -0,0 +1,360 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.dto.ShoppingCartDeltaDTO;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.ShoppingCartBusinessException;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis的购物车存储
+ * 每个用户两个hash：cart:{userId} 存 商品 -> 数量，cart:meta:{userId} 存 商品 -> 名称、图片、价格等信息，
+ * 加减一份只需要一次 HINCRBY；有改动的用户记入 cart:dirty 集合，由定时任务批量回写 shopping_cart 表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis", matchIfMissing = true)
+@Slf4j
+public class RedisCartStore implements CartStore {
+
+    private static final String COUNT_KEY = "cart:";
+    private static final String META_KEY = "cart:meta:";
+    private static final String DIRTY_KEY = "cart:dirty";
+
+    //数量hash中的标记字段，存在表示该用户的购物车已从数据库加载到redis
+    private static final String LOADED = "#";
+
+    //修改数量：未加载返回-1，增加后超过数量上限ARGV[6]时不修改并返回-2，否则返回修改后的数量，数量减到0时删除该商品
+    //ARGV[5]为商品信息，为空串时不写入；商品信息与数量在同一脚本中写入，回写任务不会读到只有数量没有商品信息的商品
+    private static final DefaultRedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '" + LOADED + "') == 0 then return -1 end\n" +
+            "local delta = tonumber(ARGV[2])\n" +
+            "if delta > 0 and tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') + delta > tonumber(ARGV[6]) then return -2 end\n" +
+            "local n = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "if n <= 0 then\n" +
+            "  redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "  redis.call('HDEL', KEYS[2], ARGV[1])\n" +
+            "  n = 0\n" +
+            "elseif ARGV[5] ~= '' then\n" +
+            "  redis.call('HSETNX', KEYS[2], ARGV[1], ARGV[5])\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+            "redis.call('EXPIRE', KEYS[2], ARGV[3])\n" +
+            "redis.call('SADD', KEYS[3], ARGV[4])\n" +
+            "return n", Long.class);
+
+    //从数据库加载：已被其他请求加载过则不做任何操作，ARGV[2..] 为 商品,数量,商品信息 三元组
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HSETNX', KEYS[1], '" + LOADED + "', '0') == 0 then return 0 end\n" +
+            "for i = 2, #ARGV, 3 do\n" +
+            "  redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "  redis.call('HSETNX', KEYS[2], ARGV[i], ARGV[i + 2])\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    //批量修改数量：ARGV[1]为过期时间，ARGV[2]为用户id，ARGV[3]为数量上限，ARGV[4..] 为 商品,变化量,商品信息 三元组，商品信息为空串时不写入
+    //未加载返回-1；先检查所有商品，任一商品增加后超过数量上限时整批不修改，返回-2
+    private static final DefaultRedisScript<Long> BATCH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '" + LOADED + "') == 0 then return -1 end\n" +
+            "local max = tonumber(ARGV[3])\n" +
+            "for i = 4, #ARGV, 3 do\n" +
+            "  local delta = tonumber(ARGV[i + 1])\n" +
+            "  if delta > 0 and tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') + delta > max then return -2 end\n" +
+            "end\n" +
+            "for i = 4, #ARGV, 3 do\n" +
+            "  local n = redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "  if n <= 0 then\n" +
+            "    redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+            "    redis.call('HDEL', KEYS[2], ARGV[i])\n" +
+            "  elseif ARGV[i + 2] ~= '' then\n" +
+            "    redis.call('HSETNX', KEYS[2], ARGV[i], ARGV[i + 2])\n" +
+            "  end\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1])\n" +
+            "redis.call('SADD', KEYS[3], ARGV[2])\n" +
+            "return 0", Long.class);
+
+    //清空购物车：保留加载标记，表示购物车为空，而不是未加载
+    private static final DefaultRedisScript<Long> CLEAN_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1], KEYS[2])\n" +
+            "redis.call('HSET', KEYS[1], '" + LOADED + "', '0')\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return redis.call('SADD', KEYS[3], ARGV[2])", Long.class);
+
+    //淘汰购物车：KEYS[1]为待回写集合，之后每个用户依次为数量hash、商品信息hash，ARGV为用户id
+    //有改动还没有回写的购物车跳过，返回实际淘汰的用户id
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "local evicted = {}\n" +
+            "for i, id in ipairs(ARGV) do\n" +
+            "  if redis.call('SISMEMBER', KEYS[1], id) == 0 then\n" +
+            "    redis.call('DEL', KEYS[2 * i], KEYS[2 * i + 1])\n" +
+            "    evicted[#evicted + 1] = id\n" +
+            "  end\n" +
+            "end\n" +
+            "return evicted", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private CatalogCache catalogCache;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+
+    public void add(Long userId, ShoppingCartDTO shoppingCartDTO) {
+        String field = field(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        //附带商品信息，商品已在购物车中时脚本不会覆盖
+        ShoppingCart shoppingCart = newItem(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(),
+                shoppingCartDTO.getDishFlavor());
+        increment(userId, field, 1, JSON.toJSONString(shoppingCart));
+    }
+
+    public void sub(Long userId, ShoppingCartDTO shoppingCartDTO) {
+        String field = field(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        increment(userId, field, -1, "");
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        String countKey = COUNT_KEY + userId;
+        if (!Boolean.TRUE.equals(hash().hasKey(countKey, LOADED))) {
+            load(userId);
+        }
+        return read(userId);
+    }
+
+    public void clean(Long userId) {
+        stringRedisTemplate.execute(CLEAN_SCRIPT, Arrays.asList(COUNT_KEY + userId, META_KEY + userId, DIRTY_KEY),
+                ttl(), userId.toString());
+    }
+
+    public void addAll(Long userId, List<ShoppingCart> shoppingCartList) {
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            String field = field(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor());
+            increment(userId, field, shoppingCart.getNumber(), JSON.toJSONString(meta(shoppingCart)));
+        }
+    }
+
+    public void applyDeltas(Long userId, List<ShoppingCartDeltaDTO> deltas) {
+        //所有商品在一次脚本调用中完成，增加数量的商品附带商品信息，已存在时脚本不会覆盖
+        List<String> args = new ArrayList<>(deltas.size() * 3 + 3);
+        args.add(ttl());
+        args.add(userId.toString());
+        args.add(String.valueOf(cartProperties.getMaxQuantity()));
+        for (ShoppingCartDeltaDTO delta : deltas) {
+            args.add(field(delta.getDishId(), delta.getSetmealId(), delta.getDishFlavor()));
+            args.add(String.valueOf(delta.getDelta()));
+            args.add(delta.getDelta() > 0
+                    ? JSON.toJSONString(newItem(delta.getDishId(), delta.getSetmealId(), delta.getDishFlavor()))
+                    : "");
+        }
+        List<String> keys = Arrays.asList(COUNT_KEY + userId, META_KEY + userId, DIRTY_KEY);
+        Long result = stringRedisTemplate.execute(BATCH_SCRIPT, keys, args.toArray());
+        if (result != null && result == -1) {
+            load(userId);
+            result = stringRedisTemplate.execute(BATCH_SCRIPT, keys, args.toArray());
+        }
+        if (result != null && result == -2) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_QUANTITY_EXCEEDED);
+        }
+    }
+
+    /**
+     * 从redis中淘汰用户的购物车，下次访问时从数据库重新加载
+     * 有改动还没有回写数据库的购物车不淘汰，检查和删除在同一脚本中完成
+     * @param userIds
+     * @return 实际淘汰的用户id，只有这些用户的购物车可以从数据库中删除
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> evictUnlessDirty(List<Long> userIds) {
+        List<String> keys = new ArrayList<>(userIds.size() * 2 + 1);
+        List<String> args = new ArrayList<>(userIds.size());
+        keys.add(DIRTY_KEY);
+        for (Long userId : userIds) {
+            keys.add(COUNT_KEY + userId);
+            keys.add(META_KEY + userId);
+            args.add(userId.toString());
+        }
+        List<String> evicted = stringRedisTemplate.execute(EVICT_SCRIPT, keys, args.toArray());
+        List<Long> result = new ArrayList<>();
+        if (evicted != null) {
+            for (String id : evicted) {
+                result.add(Long.valueOf(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将有改动的购物车批量回写数据库
+     * @return 本次回写的用户数
+     */
+    public int flush() {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, cartProperties.getFlushBatchSize());
+        if (userIds == null || userIds.isEmpty()) {
+            return 0;
+        }
+        for (String id : userIds) {
+            Long userId = Long.valueOf(id);
+            try {
+                //redis中的购物车已过期，以数据库为准，不能用空购物车覆盖
+                if (!Boolean.TRUE.equals(hash().hasKey(COUNT_KEY + userId, LOADED))) {
+                    continue;
+                }
+                List<ShoppingCart> shoppingCartList = read(userId);
+                transactionTemplate.executeWithoutResult(status -> {
+                    shoppingCartMapper.deleteByUserId(userId);
+                    if (!shoppingCartList.isEmpty()) {
+                        shoppingCartMapper.insertBatch(shoppingCartList, cartProperties.getMaxQuantity());
+                    }
+                });
+            } catch (Exception e) {
+                log.error("购物车回写数据库失败，用户：{}", userId, e);
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, id);
+            }
+        }
+        return userIds.size();
+    }
+
+    /**
+     * 修改购物车中商品的数量，购物车未加载时先从数据库加载
+     * @param meta 商品信息，商品不在购物车中时写入，为空串时不写入
+     * @return 修改后的数量
+     * @throws ShoppingCartBusinessException 增加后超过数量上限
+     */
+    private long increment(Long userId, String field, int delta, String meta) {
+        List<String> keys = Arrays.asList(COUNT_KEY + userId, META_KEY + userId, DIRTY_KEY);
+        String ttl = ttl();
+        String max = String.valueOf(cartProperties.getMaxQuantity());
+        Long number = stringRedisTemplate.execute(INCR_SCRIPT, keys, field, String.valueOf(delta), ttl, userId.toString(), meta, max);
+        if (number != null && number == -1) {
+            load(userId);
+            number = stringRedisTemplate.execute(INCR_SCRIPT, keys, field, String.valueOf(delta), ttl, userId.toString(), meta, max);
+        }
+        if (number != null && number == -2) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_QUANTITY_EXCEEDED);
+        }
+        return number == null ? 0 : number;
+    }
+
+    /**
+     * 从数据库加载用户的购物车到redis
+     */
+    private void load(Long userId) {
+        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+        List<String> args = new ArrayList<>(shoppingCartList.size() * 3 + 1);
+        args.add(ttl());
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            args.add(field(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor()));
+            args.add(String.valueOf(shoppingCart.getNumber()));
+            args.add(JSON.toJSONString(meta(shoppingCart)));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Arrays.asList(COUNT_KEY + userId, META_KEY + userId), args.toArray());
+    }
+
+    /**
+     * 读取redis中的购物车，按加入时间排序
+     */
+    private List<ShoppingCart> read(Long userId) {
+        Map<Object, Object> counts = hash().entries(COUNT_KEY + userId);
+        Map<Object, Object> metas = hash().entries(META_KEY + userId);
+        List<ShoppingCart> shoppingCartList = new ArrayList<>(counts.size());
+        for (Map.Entry<Object, Object> entry : counts.entrySet()) {
+            Object json = metas.get(entry.getKey());
+            //商品信息缺失（旧版本写入的数据），本次不返回
+            if (LOADED.equals(entry.getKey()) || json == null) {
+                continue;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject((String) json, ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf((String) entry.getValue()));
+            shoppingCartList.add(shoppingCart);
+        }
+        shoppingCartList.sort(Comparator.comparing(ShoppingCart::getCreateTime,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return shoppingCartList;
+    }
+
+    /**
+     * 构造新加入购物车商品的商品信息，判断是菜品还是套餐，名称、图片、价格从缓存中获取
+     */
+    private ShoppingCart newItem(Long dishId, Long setmealId, String dishFlavor) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .dishId(dishId)
+                .setmealId(setmealId)
+                .dishFlavor(dishFlavor)
+                .createTime(LocalDateTime.now())
+                .build();
+        if (dishId != null) {
+            Dish dish = catalogCache.getDish(dishId);
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
+        } else {
+            Setmeal setmeal = catalogCache.getSetmeal(setmealId);
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
+        }
+        return shoppingCart;
+    }
+
+    /**
+     * 存入redis的商品信息，不含id、用户和数量
+     */
+    private static ShoppingCart meta(ShoppingCart shoppingCart) {
+        return ShoppingCart.builder()
+                .name(shoppingCart.getName())
+                .image(shoppingCart.getImage())
+                .amount(shoppingCart.getAmount())
+                .dishId(shoppingCart.getDishId())
+                .setmealId(shoppingCart.getSetmealId())
+                .dishFlavor(shoppingCart.getDishFlavor())
+                .createTime(shoppingCart.getCreateTime() != null ? shoppingCart.getCreateTime() : LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 购物车中商品的hash字段：菜品为 d:菜品id:口味，套餐为 s:套餐id
+     */
+    private static String field(Long dishId, Long setmealId, String dishFlavor) {
+        if (dishId != null) {
+            return "d:" + dishId + ":" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "s:" + setmealId;
+    }
+
+    private String ttl() {
+        return String.valueOf(TimeUnit.DAYS.toSeconds(cartProperties.getExpireDays()));
+    }
+
+    private HashOperations<String, Object, Object> hash() {
+        return stringRedisTemplate.opsForHash();
+    }
+}
@@ -0,0 +1,24 @@
+package com.sky.config;
+
+import com.sky.context.ContextTaskDecorator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+@Configuration
+@EnableAsync //开启@Async异步方法
+@Slf4j
+public class AsyncConfiguration {
+
+    /**
+     * Spring Boot自动配置的线程池（@Async默认使用）会应用这个装饰器，异步方法中可以读到调用方的用户id和追踪id
+     * @return
+     */
+    @Bean
+    public TaskDecorator taskDecorator(){
+        log.info("注册传递请求上下文的任务装饰器...");
+        return new ContextTaskDecorator();
+    }
+}
@@ -0,0 +1,32 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * 配置类，按sky.http-client配置HttpClientUtil的连接池、超时和异步线程池
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfiguration {
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    @PostConstruct
+    public void init(){
+        log.info("开始配置http连接池：{}", httpClientProperties);
+        HttpClientUtil.configure(httpClientProperties);
+    }
+
+    @PreDestroy
+    public void destroy(){
+        HttpClientUtil.shutdown();
+    }
+}
@@ -1,21 +1,26 @@
 package com.sky.config;
 
 import com.sky.properties.AliOssProperties;
+import com.sky.properties.StorageProperties;
 import com.sky.utils.AliOssUtil;
+import com.sky.utils.LocalStorageUtil;
+import com.sky.utils.ObjectStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * 配置类，用于创建AliOssUtil对象
+ * 配置类，用于创建文件存储对象，通过sky.storage.type选择阿里云OSS或本地磁盘
  */
 @Configuration
 @Slf4j
 public class OssConfiguration {
 
     @Bean
-    @ConditionalOnMissingBean
+    @ConditionalOnMissingBean(ObjectStorage.class)
+    @ConditionalOnProperty(prefix = "sky.storage", name = "type", havingValue = "oss", matchIfMissing = true)
     public AliOssUtil aliOssUtil(AliOssProperties aliOssProperties){
         log.info("开始创建阿里云文件上传工具类对象：{}", aliOssProperties);
         return new AliOssUtil(aliOssProperties.getEndpoint(),
@@ -23,4 +28,12 @@ public class OssConfiguration {
                 aliOssProperties.getAccessKeySecret(),
                 aliOssProperties.getBucketName());
     }
-}
\ No newline at end of file
+
+    @Bean
+    @ConditionalOnMissingBean(ObjectStorage.class)
+    @ConditionalOnProperty(prefix = "sky.storage", name = "type", havingValue = "local")
+    public LocalStorageUtil localStorageUtil(StorageProperties storageProperties){
+        log.info("开始创建本地文件存储对象：{}", storageProperties);
+        return new LocalStorageUtil(storageProperties.getLocalDir(), storageProperties.getLocalUrlPrefix());
+    }
+}
@@ -2,7 +2,11 @@ package com.sky.config;
 
 import com.sky.interceptor.JwtTokenAdminInterceptor;
 import com.sky.interceptor.JwtTokenUserInterceptor;
+import com.sky.interceptor.RateLimitInterceptor;
+import com.sky.interceptor.RequestContextInterceptor;
 import com.sky.json.JacksonObjectMapper;
+import com.sky.properties.RateLimitProperties;
+import com.sky.properties.StorageProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -19,6 +23,7 @@ import springfox.documentation.service.ApiInfo;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
@@ -28,10 +33,18 @@ import java.util.List;
 @Slf4j
 public class WebMvcConfiguration extends WebMvcConfigurationSupport {
 
+    @Autowired
+    private RequestContextInterceptor requestContextInterceptor;
     @Autowired
     private JwtTokenAdminInterceptor jwtTokenAdminInterceptor;
     @Autowired
     private JwtTokenUserInterceptor jwtTokenUserInterceptor;
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+    @Autowired
+    private StorageProperties storageProperties;
 
     /**
      * 注册自定义拦截器
@@ -40,6 +53,10 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
      */
     protected void addInterceptors(InterceptorRegistry registry) {
         log.info("开始注册自定义拦截器...");
+        //请求上下文拦截器最先执行，后面的拦截器设置的用户id在请求结束时统一清理
+        registry.addInterceptor(requestContextInterceptor)
+                .addPathPatterns("/**");
+
         registry.addInterceptor(jwtTokenAdminInterceptor)
                 .addPathPatterns("/admin/**")
                 .excludePathPatterns("/admin/employee/login");
@@ -49,6 +66,14 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
                 .excludePathPatterns("/user/user/login")
                 .excludePathPatterns("/user/shop/status");//商店营业状态也要排除
 
+        //限流拦截器放在jwt拦截器之后，按用户限流时才能拿到当前用户id；没有配置规则时不注册（不指定路径会拦截所有请求）
+        String[] rateLimitPaths = rateLimitProperties.getRules().stream()
+                .map(RateLimitProperties.Rule::getPath)
+                .toArray(String[]::new);
+        if (rateLimitPaths.length > 0) {
+            registry.addInterceptor(rateLimitInterceptor)
+                    .addPathPatterns(rateLimitPaths);
+        }
     }
 
     /**
@@ -103,6 +128,11 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
     protected void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/doc.html").addResourceLocations("classpath:/META-INF/resources/");
         registry.addResourceHandler("/webjars/**").addResourceLocations("classpath:/META-INF/resources/webjars/");
+        //本地文件存储时，由应用直接提供上传文件的访问
+        if ("local".equals(storageProperties.getType())) {
+            String location = Paths.get(storageProperties.getLocalDir()).toAbsolutePath().normalize().toUri().toString();
+            registry.addResourceHandler("/upload/**").addResourceLocations(location);
+        }
     }
 
 
@@ -2,7 +2,8 @@ package com.sky.controller.admin;
 
 import com.sky.constant.MessageConstant;
 import com.sky.result.Result;
-import com.sky.utils.AliOssUtil;
+import com.sky.service.ImageService;
+import com.sky.vo.ImageVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -13,7 +14,6 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.UUID;
 
 /**
  * 通用接口
@@ -25,7 +25,7 @@ import java.util.UUID;
 public class CommonController {
 
     @Autowired
-    private AliOssUtil aliOssUtil;
+    private ImageService imageService;
 
     /**
      * 文件上传
@@ -38,15 +38,8 @@ public class CommonController {
         log.info("文件上传：{}",file);
 
         try {
-            //原始文件名
-            String originalFilename = file.getOriginalFilename();
-            //截取原始文件名的后缀   dfdfdf.png
-            String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            //构造新文件名称
-            String objectName = UUID.randomUUID().toString() + extension;
-
-            //文件的请求路径
-            String filePath = aliOssUtil.upload(file.getBytes(), objectName);//(字节码文件, 文件名)->OSS路径
+            //文件的请求路径，按内容哈希命名，重复上传相同图片会复用已有文件
+            String filePath = imageService.upload(file).getUrl();
             return Result.success(filePath);
 
         } catch (IOException e) {
@@ -55,4 +48,23 @@ public class CommonController {
 
         return Result.error(MessageConstant.UPLOAD_FAILED);
     }
+
+    /**
+     * 图片上传，返回原图和列表页、详情页两种尺寸的访问路径
+     * @param file
+     * @return
+     */
+    @PostMapping("/image")
+    @ApiOperation("图片上传")
+    public Result<ImageVO> uploadImage(MultipartFile file){
+        log.info("图片上传：{}",file);
+
+        try {
+            return Result.success(imageService.upload(file));
+        } catch (IOException e) {
+            log.error("图片上传失败：{}", e);
+        }
+
+        return Result.error(MessageConstant.UPLOAD_FAILED);
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.sky.controller.admin;
 
 import com.github.pagehelper.Page;
+import com.sky.auth.JwtVerifiers;
+import com.sky.auth.TokenRevocationStore;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.dto.EmployeeDTO;
 import com.sky.dto.EmployeeLoginDTO;
@@ -12,6 +14,7 @@ import com.sky.result.Result;
 import com.sky.service.EmployeeService;
 import com.sky.utils.JwtUtil;
 import com.sky.vo.EmployeeLoginVO;
+import io.jsonwebtoken.Claims;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.models.auth.In;
@@ -19,6 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,6 +39,10 @@ public class EmployeeController {
     private EmployeeService employeeService;
     @Autowired
     private JwtProperties jwtProperties;
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+    @Autowired
+    private JwtVerifiers jwtVerifiers;
 
     /**
      * 登录
@@ -74,7 +82,11 @@ public class EmployeeController {
      */
     @PostMapping("/logout")
     @ApiOperation("员工退出")
-    public Result<String> logout() {
+    public Result<String> logout(HttpServletRequest request) {
+        //吊销当前令牌，令牌过期前不能再使用
+        String token = request.getHeader(jwtProperties.getAdminTokenName());
+        Claims claims = jwtVerifiers.getAdmin().verify(token);
+        tokenRevocationStore.revoke(token, claims.getExpiration().getTime());
         return Result.success();
     }
 
@@ -0,0 +1,78 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.utils.CircuitBreakerRegistry;
+import com.sky.utils.HttpClientUtil;
+import com.sky.vo.HttpHostStatsVO;
+import com.sky.vo.WebSocketStatsVO;
+import com.sky.websocket.SseHub;
+import com.sky.websocket.WebSocketServer;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 运行状态监控
+ */
+@RestController
+@RequestMapping("/admin/monitor")
+@Slf4j
+@Api(tags = "运行状态监控接口")
+public class MonitorController {
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+    @Autowired
+    private SseHub sseHub;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    /**
+     * WebSocket连接数、发送队列深度、发送耗时、SSE连接数等统计
+     * @return
+     */
+    @GetMapping("/websocket")
+    @ApiOperation("WebSocket统计")
+    public Result<WebSocketStatsVO> websocket(){
+        WebSocketStatsVO stats = webSocketServer.getStats();
+        stats.setSseConnections(sseHub.getConnectionCount());
+        return Result.success(stats);
+    }
+
+    /**
+     * 外部接口（微信、百度地图等）按目标主机的请求数、失败数和耗时
+     * @return
+     */
+    @GetMapping("/http")
+    @ApiOperation("外部接口调用统计")
+    public Result<List<HttpHostStatsVO>> http(){
+        List<HttpHostStatsVO> list = HttpClientUtil.getHostMetrics().entrySet().stream()
+                .map(entry -> HttpHostStatsVO.builder()
+                        .host(entry.getKey())
+                        .requests(entry.getValue().getRequests())
+                        .errors(entry.getValue().getErrors())
+                        .avgMillis(entry.getValue().getAvgMillis())
+                        .maxMillis(entry.getValue().getMaxMillis())
+                        .build())
+                .collect(Collectors.toList());
+        return Result.success(list);
+    }
+
+    /**
+     * 外部接口熔断器的当前状态：CLOSED 正常，OPEN 熔断中，HALF_OPEN 试探中
+     * @return
+     */
+    @GetMapping("/circuit-breakers")
+    @ApiOperation("熔断器状态")
+    public Result<Map<String, String>> circuitBreakers(){
+        return Result.success(circuitBreakerRegistry.getStates());
+    }
+}
@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.OrderDetail;
 import com.sky.result.PageResult;
@@ -9,11 +11,21 @@ import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
+import com.sky.websocket.SseHub;
+import com.sky.websocket.WebSocketPrincipal;
+import com.sky.websocket.WebSocketServer;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 @RestController("adminOrderController")
 @Slf4j
@@ -23,6 +35,8 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private SseHub sseHub;
     @GetMapping("/conditionSearch")
     @ApiOperation("订单搜索")
     private Result<PageResult> conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO){
@@ -120,4 +134,31 @@ public class OrderController {
         orderService.complete(id);
         return Result.success();
     }
+
+    /**
+     * 订单消息推送（SSE），推送与WebSocket相同的来单、催单提醒和订单状态变更，供无法使用WebSocket的终端使用
+     * @param topics 订阅的主题，多个用逗号分隔
+     * @param lastEventId 浏览器重连时自动带上的最后收到的事件id
+     * @return
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation("订单消息推送（SSE）")
+    public SseEmitter stream(@RequestParam(defaultValue = "shop,board") String topics,
+                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId){
+        //SSE连接只有管理端令牌，只能订阅 shop、board
+        WebSocketPrincipal principal = new WebSocketPrincipal(true, BaseContext.getCurrentId());
+        Set<String> topicSet = new LinkedHashSet<>();
+        for (String topic : topics.split(",")) {
+            topic = topic.trim();
+            if (WebSocketServer.canSubscribe(principal, topic)) {
+                topicSet.add(topic);
+            }
+        }
+        if (topicSet.isEmpty()) {
+            //不占用推送连接，直接以403拒绝（SSE请求不能返回JSON结果）
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, MessageConstant.NO_SUBSCRIBABLE_TOPICS);
+        }
+        log.info("建立订单消息推送连接，主题：{}，Last-Event-ID：{}", topicSet, lastEventId);
+        return sseHub.subscribe(principal, topicSet, lastEventId);
+    }
 }
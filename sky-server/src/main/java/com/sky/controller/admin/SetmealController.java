@@ -13,6 +13,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -48,7 +49,10 @@ public class SetmealController {
 
     @DeleteMapping
     @ApiOperation("套餐批量删除")
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true)
+    @Caching(evict = {
+            @CacheEvict(cacheNames = "setmealCache",allEntries = true),
+            @CacheEvict(cacheNames = "catalogSetmeal",allEntries = true)
+    })
     public Result delete(@RequestParam("ids") List<Long> ids){
         log.info("套餐批量删除{}",ids);
         setmealService.deleteBatch(ids);
@@ -77,7 +81,10 @@ public class SetmealController {
      */
     @PutMapping
     @ApiOperation("修改套餐")
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true)
+    @Caching(evict = {
+            @CacheEvict(cacheNames = "setmealCache",allEntries = true),
+            @CacheEvict(cacheNames = "catalogSetmeal",key = "#setmealDTO.id")//购物车使用的套餐名称、图片、价格缓存
+    })
     public Result update(@RequestBody SetmealDTO setmealDTO){
         log.info("修改套餐:{}",setmealDTO);
         setmealService.update(setmealDTO);
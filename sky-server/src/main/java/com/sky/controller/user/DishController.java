@@ -40,6 +40,8 @@ public class DishController {
         List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
         //如果存在，直接返回，无须查询数据库
         if (list !=null && list.size()>0){
+            //缩略图可能在写入缓存之后才生成，图片路径不随缓存保存
+            list.forEach(dishService::fillImages);
             return Result.success(list);
         }
         Dish dish = new Dish();
@@ -48,6 +50,7 @@ public class DishController {
         //如果不存在，查询数据库，将查询到的数据放入redis中
         list = dishService.listWithFlavor(dish);
         redisTemplate.opsForValue().set(key,list);
+        list.forEach(dishService::fillImages);
 
         return Result.success(list);
     }
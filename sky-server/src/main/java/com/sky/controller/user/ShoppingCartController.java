@@ -1,6 +1,7 @@
 package com.sky.controller.user;
 
 import com.sky.dto.ShoppingCartDTO;
+import com.sky.dto.ShoppingCartDeltaDTO;
 import com.sky.entity.ShoppingCart;
 import com.sky.result.Result;
 import com.sky.service.ShoppingCartService;
@@ -65,4 +66,17 @@ public class ShoppingCartController {
         shoppingCartService.subShoppingCart(shoppingCartDTO);
         return Result.success();
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量修改购物车商品数量，客户端合并多次加减操作后一次提交
+     * @param deltas
+     * @return 修改后的购物车
+     */
+    @PostMapping("/batch")
+    @ApiOperation("批量修改购物车商品数量")
+    public Result<List<ShoppingCart>> batch(@RequestBody List<ShoppingCartDeltaDTO> deltas){
+        log.info("批量修改购物车商品数量：{}", deltas);
+        shoppingCartService.batchShoppingCart(deltas);
+        return Result.success(shoppingCartService.showShoppingCart());
+    }
+}
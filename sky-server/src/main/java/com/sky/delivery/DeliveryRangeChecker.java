@@ -0,0 +1,197 @@
+package com.sky.delivery;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.DeliveryProperties;
+import com.sky.utils.CircuitBreakerRegistry;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配送范围校验
+ * 先查收货地址的距离缓存，没有缓存时通过百度地图解析经纬度并规划驾车路线；
+ * 地图接口的调用经过熔断器，熔断或失败时按 sky.delivery.fallback 降级
+ */
+@Component
+@Slf4j
+public class DeliveryRangeChecker {
+
+    public static final String CIRCUIT_BREAKER = "baiduMap";
+
+    //接口路径，地址前缀由 sky.delivery.map-base-url 配置
+    private static final String GEOCODING_PATH = "/geocoding/v3";
+    private static final String DRIVING_PATH = "/directionlite/v1/driving";
+
+    //收货地址摘要 -> 路线距离（米）
+    private static final String DISTANCE_KEY = "delivery:distance:";
+    //收货地址摘要 -> 经纬度 lat,lng
+    private static final String LOCATION_KEY = "delivery:location:";
+
+    private static final double EARTH_RADIUS_METERS = 6371000;
+
+    @Value("${sky.shop.address}")
+    private String shopAddress;
+    @Value("${sky.baidu.ak}")
+    private String ak;
+    @Autowired
+    private DeliveryProperties deliveryProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    //店铺地址不会变，解析成功后缓存在内存中
+    private volatile String shopLocation;
+
+    /**
+     * 检查客户的收货地址是否超出配送范围
+     * @param address
+     */
+    public void check(String address) {
+        String digest = DigestUtils.md5DigestAsHex(address.getBytes(StandardCharsets.UTF_8));
+        String cached = stringRedisTemplate.opsForValue().get(DISTANCE_KEY + digest);
+        Integer distance;
+        if (cached != null) {
+            distance = Integer.valueOf(cached);
+        } else {
+            distance = circuitBreakerRegistry.get(CIRCUIT_BREAKER)
+                    .execute(() -> route(address, digest), e -> fallback(digest));
+        }
+
+        if(distance != null && distance > deliveryProperties.getMaxDistanceMeters()){
+            //配送距离超过上限
+            throw new OrderBusinessException("超出配送范围");
+        }
+    }
+
+    /**
+     * 调用地图接口计算店铺到收货地址的路线距离，并缓存经纬度和距离
+     */
+    private Integer route(String address, String digest) {
+        //店铺和收货地址的经纬度坐标同时查询
+        CompletableFuture<String> shopFuture = shopLocation != null
+                ? CompletableFuture.completedFuture(shopLocation)
+                : HttpClientUtil.doGetAsync(deliveryProperties.getMapBaseUrl() + GEOCODING_PATH, geocodingParams(shopAddress))
+                        .thenApply(json -> parseLocation(json, "店铺地址解析失败"));
+
+        String userLngLat = stringRedisTemplate.opsForValue().get(LOCATION_KEY + digest);
+        if (userLngLat == null) {
+            //获取用户收货地址的经纬度坐标
+            userLngLat = parseLocation(HttpClientUtil.doGet(deliveryProperties.getMapBaseUrl() + GEOCODING_PATH, geocodingParams(address)), "收货地址解析失败");
+            stringRedisTemplate.opsForValue().set(LOCATION_KEY + digest, userLngLat,
+                    deliveryProperties.getLocationCacheDays(), TimeUnit.DAYS);
+        }
+        String shopLngLat;
+        try {
+            shopLngLat = shopFuture.join();
+        } catch (CompletionException e) {
+            //异步线程中抛出的异常被包装过，还原后才能区分业务错误和接口故障
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        shopLocation = shopLngLat;
+
+        Map<String, String> map = new HashMap<>();
+        map.put("origin",shopLngLat);
+        map.put("destination",userLngLat);
+        map.put("steps_info","0");
+        map.put("ak",ak);
+
+        //路线规划
+        JSONObject jsonObject = parse(HttpClientUtil.doGet(deliveryProperties.getMapBaseUrl() + DRIVING_PATH, map), "配送路线规划失败");
+
+        //数据解析
+        JSONObject result = jsonObject.getJSONObject("result");
+        JSONArray jsonArray = (JSONArray) result.get("routes");
+        Integer distance = (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
+
+        stringRedisTemplate.opsForValue().set(DISTANCE_KEY + digest, distance.toString(),
+                deliveryProperties.getDistanceCacheHours(), TimeUnit.HOURS);
+        return distance;
+    }
+
+    /**
+     * 地图接口不可用时的降级处理
+     * @return 估算的距离，返回null表示放行；无法估算且不允许放行时抛出 OrderBusinessException
+     */
+    private Integer fallback(String digest) {
+        String fallback = deliveryProperties.getFallback();
+        if ("reject".equals(fallback)) {
+            throw new OrderBusinessException(MessageConstant.DELIVERY_CHECK_UNAVAILABLE);
+        }
+        if ("local".equals(fallback)) {
+            String userLngLat = stringRedisTemplate.opsForValue().get(LOCATION_KEY + digest);
+            if (shopLocation != null && userLngLat != null) {
+                int distance = (int) (straightLineMeters(shopLocation, userLngLat) * deliveryProperties.getLocalDistanceFactor());
+                log.info("地图接口不可用，按直线距离估算配送距离：{}米", distance);
+                return distance;
+            }
+            if (!deliveryProperties.isLocalMissAllow()) {
+                log.info("地图接口不可用且收货地址没有缓存的经纬度，拒绝下单");
+                throw new OrderBusinessException(MessageConstant.DELIVERY_CHECK_UNAVAILABLE);
+            }
+        }
+        log.info("地图接口不可用，跳过配送范围校验");
+        return null;
+    }
+
+    private Map<String, String> geocodingParams(String address) {
+        Map<String, String> map = new HashMap<>();
+        map.put("address",address);
+        map.put("output","json");
+        map.put("ak",ak);
+        return map;
+    }
+
+    /**
+     * 解析经纬度坐标
+     * @return lat,lng
+     */
+    private static String parseLocation(String json, String errorMessage) {
+        JSONObject location = parse(json, errorMessage).getJSONObject("result").getJSONObject("location");
+        return location.getString("lat") + "," + location.getString("lng");
+    }
+
+    /**
+     * 地图接口没有响应时抛出异常计入熔断统计；响应的状态不为0属于业务错误，直接提示用户
+     */
+    private static JSONObject parse(String json, String errorMessage) {
+        if (json == null || json.isEmpty()) {
+            throw new IllegalStateException("地图接口无响应");
+        }
+        JSONObject jsonObject = JSON.parseObject(json);
+        if(!"0".equals(jsonObject.getString("status"))){
+            throw new OrderBusinessException(errorMessage);
+        }
+        return jsonObject;
+    }
+
+    /**
+     * 两个坐标之间的球面距离（米）
+     */
+    private static double straightLineMeters(String from, String to) {
+        String[] a = from.split(",");
+        String[] b = to.split(",");
+        double lat1 = Math.toRadians(Double.parseDouble(a[0]));
+        double lat2 = Math.toRadians(Double.parseDouble(b[0]));
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(Double.parseDouble(b[1]) - Double.parseDouble(a[1]));
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(h));
+    }
+}
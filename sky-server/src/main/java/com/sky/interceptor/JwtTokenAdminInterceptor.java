@@ -1,12 +1,13 @@
 package com.sky.interceptor;
 
+import com.sky.auth.JwtVerifiers;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
-import com.sky.utils.JwtUtil;
 import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -20,8 +21,13 @@ import javax.servlet.http.HttpServletResponse;
 @Slf4j
 public class JwtTokenAdminInterceptor implements HandlerInterceptor {
 
+    //只有这个SSE接口允许从请求参数中获取令牌
+    private static final String EVENT_STREAM_PATH = "/admin/order/stream";
+
     @Autowired
     private JwtProperties jwtProperties;
+    @Autowired
+    private JwtVerifiers jwtVerifiers;
 
     /**
      * 校验jwt
@@ -41,13 +47,17 @@ public class JwtTokenAdminInterceptor implements HandlerInterceptor {
 
         //1、从请求头中获取令牌
         String token = request.getHeader(jwtProperties.getAdminTokenName());
+        if (token == null && isEventStream(request)) {
+            //浏览器的EventSource无法设置请求头，SSE连接从请求参数中获取令牌；其他接口不接受，避免令牌出现在普通请求的URL和访问日志中
+            token = request.getParameter(jwtProperties.getAdminTokenName());
+        }
 
         //2、校验令牌
         try {
-            log.info("jwt校验:{}", token);
-            Claims claims = JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), token);
+            log.debug("jwt校验:{}", token);
+            Claims claims = jwtVerifiers.getAdmin().verify(token);
             Long empId = Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString());
-            log.info("当前员工id：{}", empId);
+            log.debug("当前员工id：{}", empId);
             BaseContext.setCurrentId(empId);
             //3、通过，放行
             return true;
@@ -57,4 +67,13 @@ public class JwtTokenAdminInterceptor implements HandlerInterceptor {
             return false;
         }
     }
+
+    private static boolean isEventStream(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!EVENT_STREAM_PATH.equals(path)) {
+            return false;
+        }
+        String accept = request.getHeader("Accept");
+        return accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+    }
 }
@@ -0,0 +1,157 @@
+package com.sky.interceptor;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.properties.RateLimitProperties;
+import com.sky.ratelimit.RateLimiter;
+import com.sky.result.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * 接口限流的拦截器
+ * 注册在jwt拦截器之后，按用户限流的接口可以拿到当前登录用户id；被限流的请求直接响应429，不会进入Controller
+ */
+@Component
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    //ip地址字面量，只有符合的字符串才交给 InetAddress 解析，避免请求头中的主机名触发DNS查询
+    private static final Pattern IP_LITERAL = Pattern.compile("[0-9a-fA-F.:]+");
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    /**
+     * 按命中的规则取令牌
+     *
+     * @param request
+     * @param response
+     * @param handler
+     * @return
+     * @throws Exception
+     */
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod) || !rateLimitProperties.isEnabled()) {
+            return true;
+        }
+
+        String path = urlPathHelper.getLookupPathForRequest(request);
+        for (RateLimitProperties.Rule rule : rateLimitProperties.getRules()) {
+            if (!pathMatcher.match(rule.getPath(), path)) {
+                continue;
+            }
+            String key = rule.getPath() + ":" + resolveKey(rule, request);
+            if (rateLimiter.tryAcquire(key, rule.getCapacity(), rule.getRefillPerSecond())) {
+                return true;
+            }
+            log.info("请求过于频繁，已限流：{}", key);
+            response.setStatus(TOO_MANY_REQUESTS);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(JSON.toJSONString(Result.error(MessageConstant.TOO_MANY_REQUESTS)));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 限流维度为user且已登录时按用户id，否则按客户端ip
+     */
+    private String resolveKey(RateLimitProperties.Rule rule, HttpServletRequest request) {
+        if ("user".equals(rule.getKey())) {
+            Long userId = BaseContext.getCurrentId();
+            if (userId != null) {
+                return "u" + userId;
+            }
+        }
+        return "ip" + clientIp(request);
+    }
+
+    /**
+     * 直接连接的地址是可信代理时，从右往左取X-Forwarded-For中第一个不是可信代理的地址；
+     * 左边的地址由客户端自己填写，不可信。否则取直接连接的地址
+     */
+    private String clientIp(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isEmpty() || !isTrustedProxy(remoteAddr)) {
+            return remoteAddr;
+        }
+        String[] hops = forwarded.split(",");
+        String leftmost = remoteAddr;
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                continue;
+            }
+            if (!isTrustedProxy(hop)) {
+                return hop;
+            }
+            leftmost = hop;
+        }
+        //全部是可信代理
+        return leftmost;
+    }
+
+    private boolean isTrustedProxy(String ip) {
+        for (String proxy : rateLimitProperties.getTrustedProxies()) {
+            int slash = proxy.indexOf('/');
+            if (slash < 0 ? proxy.equals(ip) : inSubnet(ip, proxy.substring(0, slash), Integer.parseInt(proxy.substring(slash + 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ip是否属于网段，地址类型（IPv4/IPv6）不同时不属于
+     */
+    private static boolean inSubnet(String ip, String network, int prefixLength) {
+        byte[] address = parse(ip);
+        byte[] networkAddress = parse(network);
+        if (address == null || networkAddress == null || address.length != networkAddress.length) {
+            return false;
+        }
+        for (int i = 0; i < address.length && prefixLength > 0; i++, prefixLength -= 8) {
+            int mask = prefixLength >= 8 ? 0xFF : (0xFF << (8 - prefixLength)) & 0xFF;
+            if ((address[i] & mask) != (networkAddress[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] parse(String ip) {
+        if (!IP_LITERAL.matcher(ip).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
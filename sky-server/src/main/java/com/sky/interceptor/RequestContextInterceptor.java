@@ -0,0 +1,58 @@
+package com.sky.interceptor;
+
+import com.sky.context.BaseContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.UUID;
+
+/**
+ * 请求上下文的拦截器，注册在所有拦截器之前
+ * 请求开始时清理线程上可能残留的上下文并设置追踪id，请求结束时清理上下文
+ */
+@Component
+public class RequestContextInterceptor implements AsyncHandlerInterceptor {
+
+    //请求头和响应头中追踪id的名称，网关或前端传入时沿用，否则生成新的
+    public static final String TRACE_HEADER = "X-Trace-Id";
+
+    private static final int MAX_TRACE_LENGTH = 64;
+
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        BaseContext.clear();
+        String traceId = request.getHeader(TRACE_HEADER);
+        if (!isValid(traceId)) {
+            traceId = UUID.randomUUID().toString().replace("-", "");
+        }
+        BaseContext.setTraceId(traceId);
+        response.setHeader(TRACE_HEADER, traceId);
+        return true;
+    }
+
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        BaseContext.clear();
+    }
+
+    /**
+     * SSE等异步请求的处理线程在这里就归还给Tomcat了，afterCompletion会在其他线程上调用
+     */
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        BaseContext.clear();
+    }
+
+    //只接受字母、数字和-，避免把任意内容写进日志和响应头
+    private static boolean isValid(String traceId) {
+        if (traceId == null || traceId.isEmpty() || traceId.length() > MAX_TRACE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < traceId.length(); i++) {
+            char c = traceId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
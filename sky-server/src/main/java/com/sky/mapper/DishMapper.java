@@ -38,6 +38,13 @@ public interface DishMapper {
 
     void deleteByIds(List<Long> ids);
 
+    /**
+     * 统计id集合中起售中的菜品数量
+     * @param ids
+     * @return
+     */
+    Integer countOnSaleByIds(List<Long> ids);
+
     /**
      * 根据id动态修改菜品数据
      *
@@ -60,4 +60,14 @@ public interface OrderMapper {
     Integer countByMap(Map map);
 
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按id分页查询某个时间之后下单的订单号和手机号，用于构建搜索索引
+     * @param since 下单时间下限
+     * @param afterId 上一页最后一条的id
+     * @param limit 每页条数
+     * @return
+     */
+    @Select("select id, number, phone from orders where order_time >= #{since} and id > #{afterId} order by id limit #{limit}")
+    List<Orders> listForIndex(LocalDateTime since, Long afterId, int limit);
 }
@@ -35,9 +35,24 @@ public interface SetmealMapper {
 
     void deleteByIds(List<Long> ids);
 
+    /**
+     * 统计id集合中起售中的套餐数量
+     * @param ids
+     * @return
+     */
+    Integer countOnSaleByIds(List<Long> ids);
+
     @AutoFill(OperationType.UPDATE)
     void update(Setmeal setmeal);
 
+    /**
+     * 根据id集合批量修改套餐状态，状态取自setmeal对象
+     * @param setmeal
+     * @param ids
+     */
+    @AutoFill(OperationType.UPDATE)
+    void updateStatusByIds(Setmeal setmeal, List<Long> ids);
+
     /**
      * 动态条件查询套餐
      * @param setmeal
@@ -4,8 +4,10 @@ import com.sky.entity.ShoppingCart;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -31,5 +33,64 @@ public interface ShoppingCartMapper {
     @Delete("delete from shopping_cart where id = #{id}")
     void deleteById(Long id);
 
-    void insertBatch(List<ShoppingCart> shoppingCartList);
+    /**
+     * 批量插入购物车数据，同一商品已存在时累加数量，累加后超过上限的截断为上限
+     *
+     * @param shoppingCartList
+     * @param max 单个商品的数量上限
+     */
+    void insertBatch(List<ShoppingCart> shoppingCartList, int max);
+
+    /**
+     * 插入一条购物车数据，同一商品已存在时累加数量（依赖 uk_user_item 唯一索引），累加后超过上限的截断为上限
+     *
+     * @param shoppingCart
+     * @param max 单个商品的数量上限
+     */
+    void insertOrIncrement(ShoppingCart shoppingCart, int max);
+
+    /**
+     * 商品数量大于1时数量减1
+     *
+     * @param shoppingCart
+     * @return 影响的行数，为0说明商品不存在或只剩1份
+     */
+    int decrementNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 删除只剩1份的商品
+     *
+     * @param shoppingCart
+     * @return
+     */
+    int deleteLastOne(ShoppingCart shoppingCart);
+
+    /**
+     * 删除用户购物车中数量减到0及以下的商品
+     *
+     * @param userId
+     */
+    @Delete("delete from shopping_cart where user_id = #{userId} and number <= 0")
+    void deleteNotPositive(Long userId);
+
+    /**
+     * 查询最后修改时间早于指定时间的购物车所属用户id（走 idx_user_update_time 索引），按用户id分页
+     *
+     * @param time
+     * @param afterUserId 上一批最后一个用户id，第一批传0
+     * @param limit
+     * @return
+     */
+    @Select("select user_id from shopping_cart where user_id > #{afterUserId} " +
+            "group by user_id having max(update_time) < #{time} order by user_id limit #{limit}")
+    List<Long> listUserIdsByUpdateTimeLT(LocalDateTime time, Long afterUserId, int limit);
+
+    /**
+     * 删除用户购物车中最后修改时间早于指定时间的数据
+     * 查询之后用户又修改了购物车时，新修改的商品不会被删除
+     *
+     * @param userIds
+     * @param time
+     */
+    void deleteByUserIdsAndUpdateTimeLT(List<Long> userIds, LocalDateTime time);
 }
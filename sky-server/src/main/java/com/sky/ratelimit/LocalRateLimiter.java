@@ -0,0 +1,86 @@
+package com.sky.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单机令牌桶限流器，每个实例各自计数
+ * 令牌不是定时补充的，而是每次取令牌时按距上次取令牌经过的时间补齐，没有后台线程
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.rate-limit", name = "mode", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimiter implements RateLimiter {
+
+    //令牌桶数量超过该值时清理已经补满的令牌桶，避免大量不同ip把内存撑满
+    private static final int MAX_BUCKETS = 100000;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean cleaning = new AtomicBoolean();
+
+    @Override
+    public boolean tryAcquire(String key, int capacity, double refillPerSecond) {
+        long now = System.nanoTime();
+        if (buckets.size() > MAX_BUCKETS) {
+            cleanUp(now);
+        }
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+        return bucket.tryAcquire(capacity, refillPerSecond, now);
+    }
+
+    /**
+     * 已经补满的令牌桶和新建的令牌桶等价，可以直接删除
+     */
+    private void cleanUp(long now) {
+        //只允许一个线程清理，其他线程照常取令牌
+        if (!cleaning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        } finally {
+            cleaning.set(false);
+        }
+    }
+
+    private static class Bucket {
+
+        private double tokens;
+        private long lastNanos;
+        private int capacity;
+        private double refillPerSecond;
+
+        Bucket(int capacity, long now) {
+            this.tokens = capacity;
+            this.lastNanos = now;
+            this.capacity = capacity;
+        }
+
+        synchronized boolean tryAcquire(int capacity, double refillPerSecond, long now) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now > lastNanos) {
+                tokens = Math.min(capacity, tokens + (now - lastNanos) / 1e9 * refillPerSecond);
+                lastNanos = now;
+            }
+        }
+    }
+}
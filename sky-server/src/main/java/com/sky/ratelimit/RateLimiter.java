@@ -0,0 +1,17 @@
+package com.sky.ratelimit;
+
+/**
+ * 令牌桶限流器
+ */
+public interface RateLimiter {
+
+    /**
+     * 从令牌桶中取一个令牌
+     *
+     * @param key 令牌桶的标识
+     * @param capacity 令牌桶容量
+     * @param refillPerSecond 每秒补充的令牌数
+     * @return 取到令牌返回true，令牌已用完返回false
+     */
+    boolean tryAcquire(String key, int capacity, double refillPerSecond);
+}
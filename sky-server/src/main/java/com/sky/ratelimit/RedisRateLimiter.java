@@ -0,0 +1,67 @@
+package com.sky.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * 分布式令牌桶限流器，所有实例共享redis中的令牌桶
+ * 每个令牌桶是一个hash：t 剩余令牌数，ts 上次取令牌的时间（毫秒），补充和扣减在一个lua脚本中完成
+ * redis不可用时退回到单机限流，不影响正常请求
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.rate-limit", name = "mode", havingValue = "redis")
+@Slf4j
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final String KEY_PREFIX = "rate:";
+
+    //ARGV[1]容量，ARGV[2]每毫秒补充的令牌数，ARGV[3]当前时间（毫秒）；取到令牌返回1，否则返回0
+    //令牌桶补满所需的时间后自动过期，过期和补满是等价的
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1])\n" +
+            "local rate = tonumber(ARGV[2])\n" +
+            "local now = tonumber(ARGV[3])\n" +
+            "local bucket = redis.call('HMGET', KEYS[1], 't', 'ts')\n" +
+            "local tokens = tonumber(bucket[1])\n" +
+            "local ts = tonumber(bucket[2])\n" +
+            "if tokens == nil or ts == nil then\n" +
+            "  tokens = capacity\n" +
+            "  ts = now\n" +
+            "end\n" +
+            "if now > ts then\n" +
+            "  tokens = math.min(capacity, tokens + (now - ts) * rate)\n" +
+            "  ts = now\n" +
+            "end\n" +
+            "local allowed = 0\n" +
+            "if tokens >= 1 then\n" +
+            "  tokens = tokens - 1\n" +
+            "  allowed = 1\n" +
+            "end\n" +
+            "redis.call('HMSET', KEYS[1], 't', tostring(tokens), 'ts', tostring(ts))\n" +
+            "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)\n" +
+            "return allowed", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final LocalRateLimiter fallback = new LocalRateLimiter();
+
+    @Override
+    public boolean tryAcquire(String key, int capacity, double refillPerSecond) {
+        try {
+            //当前时间由应用传入，各实例之间的时钟误差只会让补充的令牌略多或略少
+            Long result = stringRedisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(KEY_PREFIX + key),
+                    String.valueOf(capacity), String.valueOf(refillPerSecond / 1000), String.valueOf(System.currentTimeMillis()));
+            return result != null && result == 1;
+        } catch (Exception e) {
+            log.warn("redis限流失败，退回到单机限流：{}", e.getMessage());
+            return fallback.tryAcquire(key, capacity, refillPerSecond);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.sky.search;
+
+import com.sky.utils.PinyinUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * n-gram倒排索引，用于菜品、套餐名称以及订单号、手机号的包含匹配
+ * 每个值按原文（小写）和拼音首字母（可选）两种形式，拆分为长度1到maxGram的片段建立倒排表，
+ * 查询时取候选最少的片段倒排表，再用contains校验，避免数据库 like '%xx%' 的全表扫描
+ */
+public class NgramIndex {
+
+    //建索引的最大片段长度，数字串的字符集小，需要更长的片段才能区分
+    private final int maxGram;
+
+    //是否同时索引拼音首字母
+    private final boolean withInitials;
+
+    //片段 -> 包含该片段的id集合
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    //id -> 已建索引的文本（原文、拼音首字母），用于删除索引和校验查询结果
+    private final Map<Long, String[]> documents = new ConcurrentHashMap<>();
+
+    /**
+     * 名称索引：双字片段，同时索引拼音首字母
+     */
+    public NgramIndex() {
+        this(2, true);
+    }
+
+    /**
+     * @param maxGram 最大片段长度
+     * @param withInitials 是否同时索引拼音首字母
+     */
+    public NgramIndex(int maxGram, boolean withInitials) {
+        this.maxGram = maxGram;
+        this.withInitials = withInitials;
+    }
+
+    /**
+     * 新增或更新索引
+     *
+     * @param id
+     * @param name
+     */
+    public synchronized void put(Long id, String name) {
+        remove(id);
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        String text = name.toLowerCase();
+        String[] texts = withInitials ? new String[]{text, PinyinUtil.getInitials(text)} : new String[]{text};
+        documents.put(id, texts);
+        for (String t : texts) {
+            for (String gram : grams(t)) {
+                postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+    }
+
+    /**
+     * 删除索引
+     *
+     * @param id
+     */
+    public synchronized void remove(Long id) {
+        String[] texts = documents.remove(id);
+        if (texts == null) {
+            return;
+        }
+        for (String t : texts) {
+            for (String gram : grams(t)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据关键字查询，原文或拼音首字母包含关键字即命中
+     *
+     * @param keyword
+     * @param limit 命中数量上限，超过上限返回null，由调用方回退到数据库查询
+     * @return
+     */
+    public List<Long> search(String keyword, int limit) {
+        String query = keyword.toLowerCase();
+        //取候选数量最少的片段倒排表
+        Set<Long> candidates = null;
+        for (String gram : queryGrams(query)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            if (candidates == null || ids.size() < candidates.size()) {
+                candidates = ids;
+            }
+        }
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        List<Long> result = new ArrayList<>();
+        for (Long id : candidates) {
+            String[] texts = documents.get(id);
+            if (texts != null && matches(texts, query)) {
+                if (result.size() >= limit) {
+                    return null;
+                }
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(String[] texts, String query) {
+        for (String text : texts) {
+            if (text.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 建索引时的片段：所有长度1到maxGram的子串
+     */
+    private List<String> grams(String text) {
+        List<String> grams = new ArrayList<>(text.length() * maxGram);
+        for (int i = 0; i < text.length(); i++) {
+            for (int n = 1; n <= maxGram && i + n <= text.length(); n++) {
+                grams.add(text.substring(i, i + n));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 查询时的片段：关键字中所有长度为 min(关键字长度, maxGram) 的子串
+     */
+    private List<String> queryGrams(String query) {
+        int n = Math.min(query.length(), maxGram);
+        if (n == 0) {
+            return Collections.emptyList();
+        }
+        List<String> grams = new ArrayList<>(query.length() - n + 1);
+        for (int i = 0; i + n <= query.length(); i++) {
+            grams.add(query.substring(i, i + n));
+        }
+        return grams;
+    }
+}
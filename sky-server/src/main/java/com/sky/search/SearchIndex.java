@@ -0,0 +1,369 @@
+package com.sky.search;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.Dish;
+import com.sky.entity.Orders;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.SearchProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存搜索索引：菜品名称、套餐名称（支持拼音首字母）以及订单号、手机号（包含匹配）
+ * 启动时从数据库加载，订单只加载最近 orderIndexDays 天的（分页读取），之后由各写操作在事务提交后同步更新，
+ * 并通过redis发布订阅通知其他实例更新；SearchIndexTask 每天重新加载一次，淘汰超出时间范围的订单
+ * 每次更新在redis中递增版本号，通知中带有版本号；本实例已应用的更新数落后于已知的最大版本号时（消息在途或丢失），
+ * 索引可能过期，查询回退到数据库。已知版本号来自收到的通知和 SearchIndexTask 的定时读取，查询时不访问redis
+ * 索引未过期时，未命中即为查询结果，不再查询数据库
+ */
+@Component
+@Slf4j
+public class SearchIndex implements MessageListener {
+
+    private static final String CHANNEL = "search:sync";
+    private static final String VERSION_KEY = "search:version";
+
+    private static final String TYPE_DISH = "dish";
+    private static final String TYPE_SETMEAL = "setmeal";
+    private static final String TYPE_ORDER = "order";
+
+    //单次查询命中的id上限，超过上限说明关键字区分度太低，回退到数据库查询
+    private static final int MAX_HITS = 1000;
+
+    //订单号、手机号都是数字串，用三字片段建索引
+    private static final int ORDER_MAX_GRAM = 3;
+
+    //当前实例id，收到自己发布的消息时跳过
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //重新加载时整体替换
+    private volatile NgramIndex dishIndex = new NgramIndex();
+    private volatile NgramIndex setmealIndex = new NgramIndex();
+    private volatile NgramIndex orderNumberIndex = new NgramIndex(ORDER_MAX_GRAM, false);
+    private volatile NgramIndex orderPhoneIndex = new NgramIndex(ORDER_MAX_GRAM, false);
+
+    //本实例已应用的更新数（包括本实例和其他实例的更新）
+    private final AtomicLong appliedVersion = new AtomicLong();
+
+    //已知的redis中的最大版本号，无法读取时为-1，此时视为过期
+    private final AtomicLong knownVersion = new AtomicLong();
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        load();
+    }
+
+    /**
+     * 从数据库加载索引，订单只加载最近 orderIndexDays 天的
+     * 先读取版本号再加载：加载期间的更新会再次收到通知，重复应用不影响结果
+     */
+    public synchronized void load() {
+        long version = remoteVersion();
+        knownVersion.set(version);
+
+        NgramIndex dishes = new NgramIndex();
+        List<Dish> dishList = dishMapper.list(new Dish());
+        dishList.forEach(dish -> dishes.put(dish.getId(), dish.getName()));
+
+        NgramIndex setmeals = new NgramIndex();
+        List<Setmeal> setmealList = setmealMapper.list(new Setmeal());
+        setmealList.forEach(setmeal -> setmeals.put(setmeal.getId(), setmeal.getName()));
+
+        NgramIndex numbers = new NgramIndex(ORDER_MAX_GRAM, false);
+        NgramIndex phones = new NgramIndex(ORDER_MAX_GRAM, false);
+        int orderCount = 0;
+        LocalDateTime since = LocalDateTime.now().minusDays(searchProperties.getOrderIndexDays());
+        long afterId = 0;
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.listForIndex(since, afterId, searchProperties.getOrderLoadPageSize());
+            for (Orders orders : ordersList) {
+                numbers.put(orders.getId(), orders.getNumber());
+                phones.put(orders.getId(), orders.getPhone());
+                afterId = orders.getId();
+            }
+            orderCount += ordersList.size();
+        } while (ordersList.size() == searchProperties.getOrderLoadPageSize());
+
+        dishIndex = dishes;
+        setmealIndex = setmeals;
+        orderNumberIndex = numbers;
+        orderPhoneIndex = phones;
+        appliedVersion.set(Math.max(version, 0));
+        log.info("搜索索引加载完成，菜品：{}，套餐：{}，订单：{}，版本：{}",
+                dishList.size(), setmealList.size(), orderCount, version);
+    }
+
+    /**
+     * 更新菜品名称索引
+     *
+     * @param id
+     * @param name
+     */
+    public void putDish(Long id, String name) {
+        afterCommit(change(TYPE_DISH, id).fluentPut("name", name));
+    }
+
+    /**
+     * 批量删除菜品名称索引
+     *
+     * @param ids
+     */
+    public void removeDishes(List<Long> ids) {
+        ids.forEach(id -> afterCommit(change(TYPE_DISH, id).fluentPut("removed", true)));
+    }
+
+    /**
+     * 根据名称或拼音首字母查询菜品id
+     *
+     * @param name
+     * @return 命中的菜品id，返回null表示需要回退到数据库查询
+     */
+    public List<Long> searchDish(String name) {
+        return orFallback(dishIndex.search(name, MAX_HITS));
+    }
+
+    /**
+     * 更新套餐名称索引
+     *
+     * @param id
+     * @param name
+     */
+    public void putSetmeal(Long id, String name) {
+        afterCommit(change(TYPE_SETMEAL, id).fluentPut("name", name));
+    }
+
+    /**
+     * 批量删除套餐名称索引
+     *
+     * @param ids
+     */
+    public void removeSetmeals(List<Long> ids) {
+        ids.forEach(id -> afterCommit(change(TYPE_SETMEAL, id).fluentPut("removed", true)));
+    }
+
+    /**
+     * 根据名称或拼音首字母查询套餐id
+     *
+     * @param name
+     * @return 命中的套餐id，返回null表示需要回退到数据库查询
+     */
+    public List<Long> searchSetmeal(String name) {
+        return orFallback(setmealIndex.search(name, MAX_HITS));
+    }
+
+    /**
+     * 新增订单号、手机号索引
+     *
+     * @param orders
+     */
+    public void putOrder(Orders orders) {
+        afterCommit(change(TYPE_ORDER, orders.getId())
+                .fluentPut("number", orders.getNumber())
+                .fluentPut("phone", orders.getPhone()));
+    }
+
+    /**
+     * 根据订单号、手机号包含的关键字查询订单id，两个条件同时存在时取交集
+     * 索引只包含最近 orderIndexDays 天的订单，没有指定开始时间时只搜索这些订单
+     *
+     * @param number
+     * @param phone
+     * @param beginTime 下单时间下限，早于索引范围时回退到数据库查询
+     * @return 命中的订单id，返回null表示需要回退到数据库查询
+     */
+    public List<Long> searchOrder(String number, String phone, LocalDateTime beginTime) {
+        if (beginTime != null && beginTime.isBefore(LocalDateTime.now().minusDays(searchProperties.getOrderIndexDays()))) {
+            return null;
+        }
+        List<Long> byNumber = hasText(number) ? orderNumberIndex.search(number, MAX_HITS) : null;
+        List<Long> byPhone = hasText(phone) ? orderPhoneIndex.search(phone, MAX_HITS) : null;
+        if (byNumber == null) {
+            return orFallback(byPhone);
+        }
+        if (byPhone == null) {
+            return orFallback(byNumber);
+        }
+        Set<Long> phoneIds = new HashSet<>(byPhone);
+        List<Long> result = new ArrayList<>();
+        for (Long id : byNumber) {
+            if (phoneIds.contains(id)) {
+                result.add(id);
+            }
+        }
+        return orFallback(result);
+    }
+
+    /**
+     * 索引是否可能过期：本实例已应用的更新落后于已知的版本号，或者上次无法读取版本号
+     *
+     * @return
+     */
+    public boolean isStale() {
+        long version = knownVersion.get();
+        return version < 0 || appliedVersion.get() < version;
+    }
+
+    /**
+     * 从redis读取最新的版本号，发现最后一条通知丢失的情况，由 SearchIndexTask 定时调用
+     */
+    public void refreshVersion() {
+        long version = remoteVersion();
+        if (version < 0) {
+            knownVersion.set(-1);
+        } else {
+            knownVersion.accumulateAndGet(version, (known, remote) -> Math.max(Math.max(known, 0), remote));
+        }
+    }
+
+    /**
+     * 收到其他实例的索引更新
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject change;
+        try {
+            change = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.warn("无法解析搜索索引更新消息", e);
+            return;
+        }
+        if (change == null || nodeId.equals(change.getString("nodeId"))) {
+            return;
+        }
+        knownVersion.accumulateAndGet(change.getLongValue("version"), Math::max);
+        apply(change);
+    }
+
+    /**
+     * 命中太多或索引可能过期时返回null，由调用方回退到数据库查询；索引未过期时空结果即为查询结果
+     */
+    private List<Long> orFallback(List<Long> ids) {
+        if (ids == null || isStale()) {
+            return null;
+        }
+        return ids;
+    }
+
+    private JSONObject change(String type, Long id) {
+        JSONObject change = new JSONObject();
+        change.put("nodeId", nodeId);
+        change.put("type", type);
+        change.put("id", id);
+        return change;
+    }
+
+    /**
+     * 在当前事务提交后更新本机索引并通知其他实例，避免事务回滚后索引与数据库不一致；没有事务时立即执行
+     */
+    private void afterCommit(JSONObject change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndPublish(change);
+                }
+            });
+        } else {
+            applyAndPublish(change);
+        }
+    }
+
+    private void applyAndPublish(JSONObject change) {
+        apply(change);
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+            if (version != null) {
+                knownVersion.accumulateAndGet(version, Math::max);
+                change.put("version", version);
+            }
+            stringRedisTemplate.convertAndSend(CHANNEL, change.toJSONString());
+        } catch (Exception e) {
+            //其他实例的版本号落后，查询时回退到数据库，并由定时任务重新加载
+            log.warn("搜索索引更新通知失败：{}", change, e);
+        }
+    }
+
+    private synchronized void apply(JSONObject change) {
+        Long id = change.getLong("id");
+        boolean removed = change.getBooleanValue("removed");
+        switch (change.getString("type")) {
+            case TYPE_DISH:
+                if (removed) {
+                    dishIndex.remove(id);
+                } else {
+                    dishIndex.put(id, change.getString("name"));
+                }
+                break;
+            case TYPE_SETMEAL:
+                if (removed) {
+                    setmealIndex.remove(id);
+                } else {
+                    setmealIndex.put(id, change.getString("name"));
+                }
+                break;
+            case TYPE_ORDER:
+                //订单不会删除，超出时间范围的订单在每天重新加载时淘汰
+                orderNumberIndex.put(id, change.getString("number"));
+                orderPhoneIndex.put(id, change.getString("phone"));
+                break;
+            default:
+                log.warn("未知的搜索索引类型：{}", change);
+                return;
+        }
+        appliedVersion.incrementAndGet();
+    }
+
+    /**
+     * redis中的索引版本号，读取失败时返回-1
+     */
+    private long remoteVersion() {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+            return version == null ? 0 : Long.parseLong(version);
+        } catch (Exception e) {
+            log.warn("读取搜索索引版本号失败", e);
+            return -1;
+        }
+    }
+
+    private static boolean hasText(String s) {
+        return s != null && !s.isEmpty();
+    }
+}
@@ -29,4 +29,10 @@ public interface DishService {
      * @return
      */
     List<DishVO> listWithFlavor(Dish dish);
+
+    /**
+     * 填充列表页、详情页图片路径，缩略图尚未生成时为原图
+     * @param dishVO
+     */
+    void fillImages(DishVO dishVO);
 }
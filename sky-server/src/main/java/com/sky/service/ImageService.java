@@ -0,0 +1,31 @@
+package com.sky.service;
+
+import com.sky.vo.ImageVO;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+public interface ImageService {
+
+    /**
+     * 上传图片，按内容哈希命名去重，并在后台生成列表页、详情页两种尺寸
+     * @param file
+     * @return 原图和两种尺寸的访问路径，缩略图尚未生成时为原图路径
+     * @throws IOException
+     */
+    ImageVO upload(MultipartFile file) throws IOException;
+
+    /**
+     * 获取列表页图片的访问路径
+     * @param url 原图访问路径
+     * @return 缩略图尚未生成或不是按内容哈希命名的图片时返回原图路径
+     */
+    String getListUrl(String url);
+
+    /**
+     * 获取详情页图片的访问路径
+     * @param url 原图访问路径
+     * @return 缩略图尚未生成或不是按内容哈希命名的图片时返回原图路径
+     */
+    String getDetailUrl(String url);
+}
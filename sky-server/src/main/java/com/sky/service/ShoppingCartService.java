@@ -1,6 +1,7 @@
 package com.sky.service;
 
 import com.sky.dto.ShoppingCartDTO;
+import com.sky.dto.ShoppingCartDeltaDTO;
 import com.sky.entity.ShoppingCart;
 
 import java.util.List;
@@ -17,4 +18,10 @@ public interface ShoppingCartService {
     void cleanShoppingCart();
 
     void subShoppingCart(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 批量修改购物车商品数量
+     * @param deltas
+     */
+    void batchShoppingCart(List<ShoppingCartDeltaDTO> deltas);
 }
@@ -15,7 +15,9 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
+import com.sky.search.SearchIndex;
 import com.sky.service.DishService;
+import com.sky.service.ImageService;
 import com.sky.vo.DishVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -24,6 +26,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -37,6 +40,10 @@ public class DishServiceImpl implements DishService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private SearchIndex searchIndex;
+    @Autowired
+    private ImageService imageService;
 
     @Override
     @Transactional
@@ -55,26 +62,41 @@ public class DishServiceImpl implements DishService {
             //向口味表插入n条数据
             dishFlavorMapper.insertBatch(flavors);//后绪步骤实现
         }
+        //同步搜索索引
+        searchIndex.putDish(dishId, dish.getName());
 
     }
 
     @Override
     public PageResult pageQuery(DishPageQueryDTO dishPageQueryDTO) {
+        //按名称搜索时先查内存索引，命中的id交给数据库按主键过滤；没有命中时直接返回，命中太多或可能过期时按名称查询数据库
+        List<Long> ids = null;
+        String name = dishPageQueryDTO.getName();
+        if (name != null && name.length() > 0) {
+            ids = searchIndex.searchDish(name);
+        }
+        if (ids != null && ids.isEmpty()) {
+            return new PageResult(0, Collections.emptyList());
+        }
+        dishPageQueryDTO.setIds(ids);
+
         PageHelper.startPage(dishPageQueryDTO.getPage(),dishPageQueryDTO.getPageSize());
 
         Page<DishVO> page = dishMapper.pageQuery(dishPageQueryDTO);
+        page.getResult().forEach(this::fillImages);
 
         return new PageResult(page.getTotal(),page.getResult());
     }
 
     @Transactional
     public void deleteBatch(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
         //判断当前菜品是否能够删除---是否存在起售中的菜品？？
-        for (Long id : ids){
-            Dish dish = dishMapper.getById(id);
-            if (dish.getStatus() == StatusConstant.ENABLE){
-                throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
-            }
+        // select count(id) from dish where status = 1 and id in (?,?,?)
+        if (dishMapper.countOnSaleByIds(ids) > 0){
+            throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
         }
         //判断当前菜品是否能够删除---是否被套餐关联了？？
         List<Long> setmealIds = setmealDishMapper.getSetmealIdsByDishIds(ids);
@@ -96,6 +118,9 @@ public class DishServiceImpl implements DishService {
         // delete from dish_flavor where dish_id in (?,?,?)
         //根据菜品id集合批量删除菜品关联的口味数据
         dishFlavorMapper.deleteByDishIds(ids);
+
+        //同步搜索索引
+        searchIndex.removeDishes(ids);
     }
 
     /**
@@ -115,6 +140,7 @@ public class DishServiceImpl implements DishService {
         DishVO dishVO = new DishVO();
         BeanUtils.copyProperties(dish, dishVO);
         dishVO.setFlavors(dishFlavors);
+        fillImages(dishVO);
 
         return dishVO;
     }
@@ -144,6 +170,10 @@ public class DishServiceImpl implements DishService {
             dishFlavorMapper.insertBatch(flavors);
         }
 
+        //名称有修改时同步搜索索引
+        if (dishDTO.getName() != null) {
+            searchIndex.putDish(dishDTO.getId(), dishDTO.getName());
+        }
     }
 
     @Override
@@ -180,13 +210,11 @@ public class DishServiceImpl implements DishService {
             List<Long> setmealIds = setmealDishMapper.getSetmealIdsByDishIds(dishIds);
 
             if (setmealIds != null && setmealIds.size() > 0) {
-                for (Long setmealId : setmealIds) {
-                    Setmeal setmeal = Setmeal.builder()
-                            .id(setmealId)
-                            .status(StatusConstant.DISABLE)
-                            .build();
-                    setmealMapper.update(setmeal);
-                }
+                // update setmeal set status = 0 where id in (?,?,?)
+                Setmeal setmeal = Setmeal.builder()
+                        .status(StatusConstant.DISABLE)
+                        .build();
+                setmealMapper.updateStatusByIds(setmeal, setmealIds);
             }
         }
     }
@@ -214,4 +242,13 @@ public class DishServiceImpl implements DishService {
 
         return dishVOList;
     }
+
+    /**
+     * 填充列表页、详情页图片路径，缩略图尚未生成时为原图
+     * @param dishVO
+     */
+    public void fillImages(DishVO dishVO) {
+        dishVO.setListImage(imageService.getListUrl(dishVO.getImage()));
+        dishVO.setDetailImage(imageService.getDetailUrl(dishVO.getImage()));
+    }
 }
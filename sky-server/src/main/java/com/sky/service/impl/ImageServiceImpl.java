@@ -0,0 +1,328 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.context.ContextExecutors;
+import com.sky.exception.UploadFailedException;
+import com.sky.properties.ImageProperties;
+import com.sky.service.ImageService;
+import com.sky.utils.ObjectStorage;
+import com.sky.vo.ImageVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@Slf4j
+public class ImageServiceImpl implements ImageService {
+
+    //列表页、详情页图片的对象名称后缀，例如 {hash}_list.png
+    public static final String LIST_SUFFIX = "_list";
+    public static final String DETAIL_SUFFIX = "_detail";
+
+    //已生成缩略图的原图内容哈希
+    private static final String VARIANTS_KEY = "image:variants";
+
+    //缩略图未生成的查询结果在本机缓存的时间，避免每次渲染列表都查询redis
+    private static final long MISSING_TTL_MILLIS = 60 * 1000L;
+
+    //允许上传的图片后缀
+    private static final Set<String> ALLOWED_EXTENSIONS = new HashSet<>(
+            Arrays.asList(".jpg", ".jpeg", ".png", ".gif", ".webp"));
+
+    @Autowired
+    private ObjectStorage objectStorage;
+    @Autowired
+    private ImageProperties imageProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //本机已确认生成缩略图的哈希，缩略图生成后不会删除，无需过期
+    private final Set<String> readyHashes = ConcurrentHashMap.newKeySet();
+
+    //本机确认缩略图未生成的哈希 -> 结果过期时间
+    private final Map<String, Long> missingHashes = new ConcurrentHashMap<>();
+
+    //生成缩略图的线程池，线程数和队列都有上限，避免上传高峰时占满内存
+    private ThreadPoolTaskExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = ContextExecutors.newFixedExecutor("image-worker-",
+                imageProperties.getWorkers(), imageProperties.getQueueCapacity());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 上传图片
+     * 0. 只接受jpg、jpeg、png、gif、webp后缀的图片，其他文件上传失败
+     * 1. 把上传内容转存到临时文件，同时计算SHA-256
+     * 2. 以内容哈希作为对象名称，相同内容已存在时不再重复上传原图，缩略图缺失时重新生成
+     * 3. 上传原图后，把生成缩略图的任务交给后台线程池
+     *
+     * @param file
+     * @return
+     */
+    public ImageVO upload(MultipartFile file) throws IOException {
+        String extension = extension(file.getOriginalFilename());
+        if (!ALLOWED_EXTENSIONS.contains(extension)) {
+            log.info("不支持上传的文件：{}", file.getOriginalFilename());
+            throw new UploadFailedException(MessageConstant.UPLOAD_FAILED);
+        }
+
+        Path temp = Files.createTempFile("sky-image-", extension);
+        boolean handedOver = false;
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = Hex.encodeHexString(digest.digest());
+            String objectName = hash + extension;
+
+            String url;
+            if (objectStorage.exists(objectName)) {
+                //相同内容的图片已经上传过，直接复用
+                log.info("图片已存在，跳过上传：{}", objectName);
+                url = objectStorage.getUrl(objectName);
+                if (isReady(hash) || variantsExist(hash, extension)) {
+                    return toImageVO(url);
+                }
+                log.info("图片的缩略图缺失，重新生成：{}", objectName);
+            } else {
+                try (InputStream inputStream = Files.newInputStream(temp)) {
+                    url = objectStorage.upload(inputStream, Files.size(temp), objectName);
+                }
+            }
+
+            //后台生成缩略图，临时文件由后台任务负责删除
+            try {
+                executor.execute(() -> generateVariants(temp, hash, extension));
+                handedOver = true;
+            } catch (RejectedExecutionException e) {
+                log.warn("缩略图任务队列已满，跳过生成：{}", objectName);
+            }
+            return toImageVO(url);
+        } finally {
+            if (!handedOver) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 生成列表页、详情页两种尺寸的图片
+     *
+     * @param source 原图临时文件
+     * @param hash 原图内容哈希
+     * @param extension 文件后缀
+     */
+    private void generateVariants(Path source, String hash, String extension) {
+        try {
+            BufferedImage image = ImageIO.read(source.toFile());
+            if (image == null) {
+                //ImageIO不支持的格式（如webp），只保留原图
+                log.info("不支持生成缩略图的图片格式：{}", extension);
+                return;
+            }
+            String formatName = extension.substring(1);
+            if (upload(resize(image, imageProperties.getListWidth(), formatName), formatName, hash + LIST_SUFFIX + extension)
+                    && upload(resize(image, imageProperties.getDetailWidth(), formatName), formatName, hash + DETAIL_SUFFIX + extension)) {
+                markReady(hash);
+            }
+        } catch (Exception e) {
+            log.error("生成缩略图失败：{}", hash, e);
+        } finally {
+            try {
+                Files.deleteIfExists(source);
+            } catch (IOException e) {
+                log.warn("删除临时文件失败：{}", source);
+            }
+        }
+    }
+
+    /**
+     * 等比例缩放到指定宽度，原图宽度不超过目标宽度时保持原尺寸
+     */
+    private BufferedImage resize(BufferedImage image, int targetWidth, String formatName) {
+        int width = Math.min(targetWidth, image.getWidth());
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        //jpg不支持透明通道
+        boolean alpha = image.getColorModel().hasAlpha() && !"jpg".equals(formatName) && !"jpeg".equals(formatName);
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * @return 是否上传成功，不支持写出的格式返回false
+     */
+    private boolean upload(BufferedImage image, String formatName, String objectName) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, formatName, outputStream)) {
+            log.info("不支持写出的图片格式：{}", formatName);
+            return false;
+        }
+        byte[] bytes = outputStream.toByteArray();
+        objectStorage.upload(new ByteArrayInputStream(bytes), bytes.length, objectName);
+        return true;
+    }
+
+    public String getListUrl(String url) {
+        return variantUrl(url, LIST_SUFFIX);
+    }
+
+    public String getDetailUrl(String url) {
+        return variantUrl(url, DETAIL_SUFFIX);
+    }
+
+    private ImageVO toImageVO(String url) {
+        return ImageVO.builder()
+                .url(url)
+                .listUrl(getListUrl(url))
+                .detailUrl(getDetailUrl(url))
+                .build();
+    }
+
+    /**
+     * 在原图路径的文件名和后缀之间插入尺寸后缀，缩略图尚未生成时返回原图路径
+     */
+    private String variantUrl(String url, String suffix) {
+        if (url == null) {
+            return null;
+        }
+        int slash = url.lastIndexOf('/');
+        int dot = url.lastIndexOf('.');
+        if (dot <= slash) {
+            return url;
+        }
+        String hash = url.substring(slash + 1, dot);
+        if (!isContentHash(hash) || !isReady(hash)) {
+            return url;
+        }
+        return url.substring(0, dot) + suffix + url.substring(dot);
+    }
+
+    /**
+     * 缩略图是否已生成，先查本机缓存，再查redis
+     */
+    private boolean isReady(String hash) {
+        if (readyHashes.contains(hash)) {
+            return true;
+        }
+        Long missingUntil = missingHashes.get(hash);
+        if (missingUntil != null && missingUntil > System.currentTimeMillis()) {
+            return false;
+        }
+        boolean ready;
+        try {
+            ready = Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(VARIANTS_KEY, hash));
+        } catch (Exception e) {
+            log.warn("查询缩略图状态失败：{}", hash, e);
+            return false;
+        }
+        if (ready) {
+            readyHashes.add(hash);
+            missingHashes.remove(hash);
+        } else {
+            missingHashes.put(hash, System.currentTimeMillis() + MISSING_TTL_MILLIS);
+        }
+        return ready;
+    }
+
+    /**
+     * 记录缩略图未写入redis之前（或记录丢失）生成的缩略图：两种尺寸都存在时补记为已生成
+     */
+    private boolean variantsExist(String hash, String extension) {
+        if (objectStorage.exists(hash + LIST_SUFFIX + extension)
+                && objectStorage.exists(hash + DETAIL_SUFFIX + extension)) {
+            markReady(hash);
+            return true;
+        }
+        return false;
+    }
+
+    private void markReady(String hash) {
+        readyHashes.add(hash);
+        missingHashes.remove(hash);
+        try {
+            stringRedisTemplate.opsForSet().add(VARIANTS_KEY, hash);
+        } catch (Exception e) {
+            //其他实例查不到记录时返回原图，下次上传相同图片时会补记
+            log.warn("记录缩略图状态失败：{}", hash, e);
+        }
+    }
+
+    /**
+     * 截取原始文件名的小写后缀，例如 dfdfdf.PNG -> .png，没有后缀时返回空字符串
+     */
+    private static String extension(String originalFilename) {
+        if (originalFilename == null) {
+            return "";
+        }
+        int dot = originalFilename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        return originalFilename.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isContentHash(String name) {
+        if (name.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
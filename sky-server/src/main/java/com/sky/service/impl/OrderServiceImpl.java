@@ -1,13 +1,13 @@
 package com.sky.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
+import com.sky.cart.CartStore;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.xiaoymin.knife4j.core.util.CollectionUtils;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
+import com.sky.delivery.DeliveryRangeChecker;
 import com.sky.dto.*;
 import com.sky.entity.*;
 import com.sky.exception.AddressBookBusinessException;
@@ -15,23 +15,27 @@ import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
 import com.sky.result.PageResult;
+import com.sky.search.SearchIndex;
 import com.sky.service.OrderService;
-import com.sky.utils.HttpClientUtil;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
+import com.sky.websocket.ClusterBus;
+import com.sky.websocket.OrderStatusPublisher;
 import com.sky.websocket.WebSocketServer;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,15 +51,15 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
     @Autowired
-    private UserMapper userMapper;
+    private ClusterBus clusterBus;
     @Autowired
-    private WebSocketServer webSocketServer;
-    @Value("${sky.shop.address}")
-    private String shopAddress;
-    @Value("${sky.baidu.ak}")
-    private String ak;
+    private OrderStatusPublisher orderStatusPublisher;
+    @Autowired
+    private SearchIndex searchIndex;
+    @Autowired
+    private DeliveryRangeChecker deliveryRangeChecker;
 
 
 
@@ -80,14 +84,12 @@ public class OrderServiceImpl implements OrderService {
 
         //购物车为空
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
 
         //检查用户的收货地址是否超出配送范围
-        checkOutOfRange(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
+        deliveryRangeChecker.check(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
 
         //查询当前用户的购物车数据
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = cartStore.list(userId);
 
         if (shoppingCartList == null || shoppingCartList.size() == 0){
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
@@ -107,6 +109,9 @@ public class OrderServiceImpl implements OrderService {
 
         //向订单表插入1条数据
         orderMapper.insert(order);
+        //同步订单号、手机号搜索索引
+        searchIndex.putOrder(order);
+        orderStatusPublisher.publish(order, null, Orders.PENDING_PAYMENT);
 
         //订单明细数据
         List<OrderDetail> orderDetailList = new ArrayList<>();
@@ -119,8 +124,13 @@ public class OrderServiceImpl implements OrderService {
         //向明细表插入n条数据
         orderDetailMapper.insertBatch(orderDetailList);
 
-        //清理购物车中的数据
-        shoppingCartMapper.deleteByUserId(userId);
+        //事务提交后再清理购物车（redis存储不参与数据库事务），下单失败或回滚时购物车保留
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cartStore.clean(userId);
+            }
+        });
 
         //封装返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
@@ -174,7 +184,6 @@ public class OrderServiceImpl implements OrderService {
     public OrderPaymentVO payment(OrdersPaymentDTO ordersPaymentDTO) throws Exception {
         // 1. 获取当前登录用户id (保持原逻辑)
         Long userId = BaseContext.getCurrentId();
-        User user = userMapper.getByUserId(userId);
 
         // 2. 【核心修改】直接调用支付成功的方法
         // 我们利用订单号，直接告诉系统：这个订单已经支付成功了！
@@ -215,6 +224,7 @@ public class OrderServiceImpl implements OrderService {
                 .build();
 
         orderMapper.update(orders);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.TO_BE_CONFIRMED);
 
         //////////////////////////////////////////////
         Map map = new HashMap();
@@ -222,8 +232,8 @@ public class OrderServiceImpl implements OrderService {
         map.put("orderId", orders.getId());
         map.put("content", "订单号：" + outTradeNo);
 
-        //通过WebSocket实现来单提醒，向客户端浏览器推送消息
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //通过WebSocket实现来单提醒，向所有实例上订阅了商家订单看板的客户端浏览器推送消息，事务提交后才推送
+        clusterBus.publishAfterCommit(WebSocketServer.TOPIC_SHOP, JSON.toJSONString(map));
         ///////////////////////////////////////////////////
     }
 
@@ -325,6 +335,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
         orderMapper.update(orders);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.CANCELLED);
 
 
     }
@@ -334,7 +345,7 @@ public class OrderServiceImpl implements OrderService {
         //1. 获取当前用户 ID：通过 BaseContext.getCurrentId() 获取。
         //2. 查询订单明细：根据订单 ID 调用 orderDetailMapper.getByOrderId(id) 获取商品列表。
         //3. 对象转换与封装：将每一个 OrderDetail 对象转换为 ShoppingCart 对象，并设置当前用户 ID 和创建时间。
-        //4. 批量插入：调用 shoppingCartMapper.insertBatch() 写入数据库
+        //4. 批量加入购物车：调用 cartStore.addAll() 写入购物车
 
         // 1. 查询当前用户id
         Long userId = BaseContext.getCurrentId();
@@ -351,7 +362,7 @@ public class OrderServiceImpl implements OrderService {
             shoppingCart.setCreateTime(LocalDateTime.now());
             shoppingCartList.add(shoppingCart);
         }
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        cartStore.addAll(userId, shoppingCartList);
     }
 
     /**
@@ -364,6 +375,14 @@ public class OrderServiceImpl implements OrderService {
         //    1. 调用 PageHelper.startPage 开启分页。
         //    2. 调用 orderMapper.pageQuery 获取分页后的 Orders 列表。
         //    3. 关键步骤：将 Orders 转换为 OrderVO。在转换过程中，需要查询订单明细，并将菜品名称与数量拼接成字符串（例如：getOrderDishesStr 方法）
+        // 0. 按订单号、手机号搜索时先查内存索引，命中的id交给数据库按主键过滤；索引没有命中任何订单时直接返回，
+        //    命中太多、可能过期或者搜索索引范围之外的订单时直接查询数据库
+        List<Long> ids = searchIndex.searchOrder(ordersPageQueryDTO.getNumber(), ordersPageQueryDTO.getPhone(),
+                ordersPageQueryDTO.getBeginTime());
+        if (ids != null && ids.isEmpty()) {
+            return new PageResult(0, Collections.emptyList());
+        }
+        ordersPageQueryDTO.setIds(ids);
         // 1. 开启分页
         PageHelper.startPage(ordersPageQueryDTO.getPage(),ordersPageQueryDTO.getPageSize());
         // 2. 调用Mapper进行条件查询
@@ -435,11 +454,16 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersConfirmDTO
      */
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
+        Orders ordersDB = orderMapper.getById(ordersConfirmDTO.getId());
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
         Orders order = Orders.builder()
                 .id(ordersConfirmDTO.getId())
                 .status(Orders.CONFIRMED)
                 .build();
         orderMapper.update(order);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.CONFIRMED);
     }
 
     /**
@@ -481,6 +505,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setCancelTime(LocalDateTime.now());
         orders.setPayStatus(payStatus);
         orderMapper.update(orders);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.CANCELLED);
     }
 
 
@@ -533,6 +558,7 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
         orderMapper.update(order);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.CANCELLED);
     }
 
     /**
@@ -556,6 +582,7 @@ public class OrderServiceImpl implements OrderService {
 
         // 4. 调用mapper修改状态
         orderMapper.update(order);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.DELIVERY_IN_PROGRESS);
     }
 
     /**
@@ -582,73 +609,9 @@ public class OrderServiceImpl implements OrderService {
                 .build();
         // 4. 执行更新
         orderMapper.update(order);
+        orderStatusPublisher.publish(ordersDB, ordersDB.getStatus(), Orders.COMPLETED);
     }
 
-    /**
-     * 检查客户的收货地址是否超出配送范围
-     * @param address
-     */
-    private void checkOutOfRange(String address) {
-        Map map = new HashMap();
-        map.put("address",shopAddress);
-        map.put("output","json");
-        map.put("ak",ak);
-
-        //获取店铺的经纬度坐标
-        String shopCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-        JSONObject jsonObject = JSON.parseObject(shopCoordinate);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("店铺地址解析失败");
-        }
-
-        //数据解析
-        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
-        String lat = location.getString("lat");
-        String lng = location.getString("lng");
-        //店铺经纬度坐标
-        String shopLngLat = lat + "," + lng;
-
-        map.put("address",address);
-        //获取用户收货地址的经纬度坐标
-        String userCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-        jsonObject = JSON.parseObject(userCoordinate);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("收货地址解析失败");
-        }
-
-        //数据解析
-        location = jsonObject.getJSONObject("result").getJSONObject("location");
-        lat = location.getString("lat");
-        lng = location.getString("lng");
-        //用户收货地址经纬度坐标
-        String userLngLat = lat + "," + lng;
-
-        map.put("origin",shopLngLat);
-        map.put("destination",userLngLat);
-        map.put("steps_info","0");
-
-        //路线规划
-        String json = HttpClientUtil.doGet("https://api.map.baidu.com/directionlite/v1/driving", map);
-
-        jsonObject = JSON.parseObject(json);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("配送路线规划失败");
-        }
-
-        //数据解析
-        JSONObject result = jsonObject.getJSONObject("result");
-        JSONArray jsonArray = (JSONArray) result.get("routes");
-        Integer distance = (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
-
-        if(distance > 5000){
-            //配送距离超过5000米
-            throw new OrderBusinessException("超出配送范围");
-        }
-    }
-
-
     /**
      * 催单
      * @param id
@@ -664,6 +627,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("type", 2);//2代表用户催单
         map.put("orderId", id);
         map.put("content", "订单号：" + orderDB.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //同一订单短时间内的多次催单合并为一条
+        clusterBus.publish(WebSocketServer.TOPIC_SHOP, JSON.toJSONString(map), "reminder:" + id);
     }
 }
\ No newline at end of file
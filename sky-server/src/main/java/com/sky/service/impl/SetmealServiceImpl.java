@@ -14,6 +14,8 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
+import com.sky.search.SearchIndex;
+import com.sky.service.ImageService;
 import com.sky.service.SetmealService;
 import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
@@ -22,6 +24,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -32,6 +35,10 @@ public class SetmealServiceImpl implements SetmealService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private DishMapper dishMapper;
+    @Autowired
+    private SearchIndex searchIndex;
+    @Autowired
+    private ImageService imageService;
     @Transactional
     public void save(SetmealDTO setmealDTO) {
         Setmeal setmeal = new Setmeal();
@@ -48,6 +55,9 @@ public class SetmealServiceImpl implements SetmealService {
             }
         }
         setmealDishMapper.insertBatch(setmealDishes);
+
+        //同步搜索索引
+        searchIndex.putSetmeal(setmealId, setmeal.getName());
     }
 
     /**
@@ -56,9 +66,23 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public PageResult pageQuery(SetmealPageQueryDTO setmealPageQueryDTO) {
+        //按名称搜索时先查内存索引，命中的id交给数据库按主键过滤；没有命中时直接返回，命中太多或可能过期时按名称查询数据库
+        List<Long> ids = null;
+        String name = setmealPageQueryDTO.getName();
+        if (name != null && name.length() > 0) {
+            ids = searchIndex.searchSetmeal(name);
+        }
+        if (ids != null && ids.isEmpty()) {
+            return new PageResult(0, Collections.emptyList());
+        }
+        setmealPageQueryDTO.setIds(ids);
+
         PageHelper.startPage(setmealPageQueryDTO.getPage(),setmealPageQueryDTO.getPageSize());
 
         Page<SetmealVO> page = setmealMapper.pageQuery(setmealPageQueryDTO);
+        for (SetmealVO setmealVO : page.getResult()) {
+            fillImages(setmealVO);
+        }
 
         return new PageResult(page.getTotal(),page.getResult());
     }
@@ -69,18 +93,22 @@ public class SetmealServiceImpl implements SetmealService {
      */
     @Transactional
     public void deleteBatch(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
         //判断当前套餐是否能够删除---是否存在起售中
-        for (Long id : ids) {
-            Setmeal setmeal = setmealMapper.getById(id);
-            if (setmeal.getStatus() == StatusConstant.ENABLE){
-                //起售中的套餐不能删除
-                throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE);
-            }
+        // select count(id) from setmeal where status = 1 and id in (?,?,?)
+        if (setmealMapper.countOnSaleByIds(ids) > 0){
+            //起售中的套餐不能删除
+            throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE);
         }
         //根据套餐id集合批量删除套餐表中的套餐数据
         setmealMapper.deleteByIds(ids);
         //根据套餐id集合批量删除套餐菜品关系表中的数据
         setmealDishMapper.deleteBySetmealIds(ids);
+
+        //同步搜索索引
+        searchIndex.removeSetmeals(ids);
     }
 
     /**
@@ -98,6 +126,7 @@ public class SetmealServiceImpl implements SetmealService {
         SetmealVO setmealVO = new SetmealVO();
         BeanUtils.copyProperties(setmeal,setmealVO);
         setmealVO.setSetmealDishes(setmealDishes);
+        fillImages(setmealVO);
 
         return setmealVO;
     }
@@ -125,6 +154,11 @@ public class SetmealServiceImpl implements SetmealService {
             // 第二步：等大家都准备好了，再一次性批量插入（移到循环外面！）
             setmealDishMapper.insertBatch(setmealDishes);
         }
+
+        //名称有修改时同步搜索索引
+        if (setmealDTO.getName() != null) {
+            searchIndex.putSetmeal(setmealDTO.getId(), setmealDTO.getName());
+        }
     }
 
     /**
@@ -172,6 +206,18 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public List<DishItemVO> getDishItemById(Long id) {
-        return setmealMapper.getDishItemBySetmealId(id);
+        List<DishItemVO> dishItemVOList = setmealMapper.getDishItemBySetmealId(id);
+        for (DishItemVO dishItemVO : dishItemVOList) {
+            dishItemVO.setListImage(imageService.getListUrl(dishItemVO.getImage()));
+        }
+        return dishItemVOList;
+    }
+
+    /**
+     * 填充列表页、详情页图片路径，缩略图尚未生成时为原图
+     */
+    private void fillImages(SetmealVO setmealVO) {
+        setmealVO.setListImage(imageService.getListUrl(setmealVO.getImage()));
+        setmealVO.setDetailImage(imageService.getDetailUrl(setmealVO.getImage()));
     }
 }
@@ -1,85 +1,48 @@
 package com.sky.service.impl;
 
+import com.sky.cart.CartStore;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
-import com.sky.entity.Dish;
-import com.sky.entity.Setmeal;
+import com.sky.dto.ShoppingCartDeltaDTO;
 import com.sky.entity.ShoppingCart;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
+import com.sky.exception.ShoppingCartBusinessException;
+import com.sky.properties.CartProperties;
 import com.sky.service.ShoppingCartService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
     @Autowired
-    private DishMapper dishMapper;
-    @Autowired
-    private SetmealMapper setmealMapper;
+    private CartProperties cartProperties;
+
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //业务逻辑：
-        //请求进来 -> 2. 查数据库 (user_id + dish_id/setmeal_id + flavor)
-        //结果存在 -> 数量 + 1 -> Update
-        //结果不存在 -> 去查菜品/套餐表补全信息 -> 数量设为 1 -> Insert
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO,shoppingCart);
-        //只能查询自己的购物车数据
-        shoppingCart.setUserId(BaseContext.getCurrentId());
-        //判断当前商品是否在购物车中
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
-
-        if (shoppingCartList!=null && shoppingCartList.size()>0){
-            //如果已经存在，就更新数量，数量加1
-            shoppingCart = shoppingCartList.get(0);
-            shoppingCart.setNumber(shoppingCart.getNumber()+1);
-            shoppingCartMapper.updateNumberById(shoppingCart);
-        }else {
-            //如果不存在，插入数据，数量就是1
-
-            //判断当前添加到购物车的是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if (dishId != null){
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-            }else {
-                //添加到购物车的是套餐
-                Setmeal setmeal = setmealMapper.getById(shoppingCartDTO.getSetmealId());
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
-            }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
-        }
-
+        //只能操作自己的购物车数据
+        cartStore.add(BaseContext.getCurrentId(), shoppingCartDTO);
     }
 
     @Override
     public List<ShoppingCart> showShoppingCart() {
-        Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart =ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        return shoppingCartMapper.list(shoppingCart);
+        return cartStore.list(BaseContext.getCurrentId());
     }
 
     /**
      * 清空购物车商品
      */
     public void cleanShoppingCart() {
-        shoppingCartMapper.deleteByUserId(BaseContext.getCurrentId());
+        cartStore.clean(BaseContext.getCurrentId());
     }
 
     /**
@@ -87,30 +50,47 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      * @param shoppingCartDTO
      */
     public void subShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //“先查再判：是一份则删，多份则减”
-
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO,shoppingCart);
-        //设置查询条件，查询当前登录用户的购物车数据
-        shoppingCart.setUserId(BaseContext.getCurrentId());
-
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        cartStore.sub(BaseContext.getCurrentId(), shoppingCartDTO);
+    }
 
-        if (list!=null && list.size()>0){
-            shoppingCart=list.get(0);
-            //当前商品在购物车中的份数为1，直接删除当前记录
-            if (shoppingCart.getNumber()==1){
-                shoppingCartMapper.deleteById(shoppingCart.getId());
-            }else {
-                shoppingCart.setNumber(shoppingCart.getNumber() - 1);
-                shoppingCartMapper.updateNumberById(shoppingCart);
+    /**
+     * 批量修改购物车商品数量
+     * 提交的商品数、单个商品的数量变化都有上限，修改后单个商品的数量超过上限时整批拒绝
+     * @param deltas
+     */
+    @Transactional
+    public void batchShoppingCart(List<ShoppingCartDeltaDTO> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        if (deltas.size() > cartProperties.getMaxBatchSize()) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_BATCH_TOO_LARGE);
+        }
+        //同一商品的多次变化先合并，抵消为0的不再提交
+        Map<List<Object>, ShoppingCartDeltaDTO> merged = new LinkedHashMap<>();
+        for (ShoppingCartDeltaDTO delta : deltas) {
+            if (delta.getDelta() == null || delta.getDelta() == 0
+                    || (delta.getDishId() == null && delta.getSetmealId() == null)) {
+                continue;
+            }
+            if (Math.abs((long) delta.getDelta()) > cartProperties.getMaxDelta()) {
+                throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_DELTA_INVALID);
+            }
+            List<Object> key = Arrays.asList(delta.getDishId(), delta.getSetmealId(), delta.getDishFlavor());
+            ShoppingCartDeltaDTO existing = merged.get(key);
+            if (existing == null) {
+                ShoppingCartDeltaDTO copy = new ShoppingCartDeltaDTO();
+                BeanUtils.copyProperties(delta, copy);
+                merged.put(key, copy);
+            } else {
+                existing.setDelta(existing.getDelta() + delta.getDelta());
             }
         }
-
-        //当前商品在购物车中的份数不为1，修改份数即可
-
-
-
+        merged.values().removeIf(delta -> delta.getDelta() == 0);
+        if (merged.isEmpty()) {
+            return;
+        }
+        cartStore.applyDeltas(BaseContext.getCurrentId(), new ArrayList<>(merged.values()));
     }
 
 }
@@ -2,17 +2,20 @@ package com.sky.service.impl;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.auth.UserCache;
 import com.sky.constant.MessageConstant;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
-import com.sky.mapper.UserMapper;
+import com.sky.exception.ServiceUnavailableException;
 import com.sky.properties.WeChatProperties;
 import com.sky.service.UserService;
+import com.sky.utils.CircuitBreakerRegistry;
 import com.sky.utils.HttpClientUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.juli.WebappProperties;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -22,12 +25,26 @@ import java.util.Map;
 @Service
 @Slf4j
 public class UserServiceImpl implements UserService {
-    //微信服务接口地址
-    public static final String WX_LOGIN = "https://api.weixin.qq.com/sns/jscode2session";
+    //微信服务接口路径，地址前缀由 sky.wechat.api-base-url 配置
+    public static final String WX_LOGIN = "/sns/jscode2session";
+
+    public static final String CIRCUIT_BREAKER = "wechatLogin";
+
+    //按openid分段加锁，同一新用户的并发首次登录只注册一次
+    private static final Object[] REGISTER_LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < REGISTER_LOCKS.length; i++) {
+            REGISTER_LOCKS[i] = new Object();
+        }
+    }
+
     @Autowired
     private WeChatProperties weChatProperties;
     @Autowired
-    private UserMapper userMapper;
+    private UserCache userCache;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
     @Override
     public User wxLogin(UserLoginDTO userLoginDTO) {
         //调用微信接口服务，获得当前微信用户的openid
@@ -38,18 +55,39 @@ public class UserServiceImpl implements UserService {
         }
 
         //判断当前用户是否为新用户
-        User user = userMapper.getById(openid);
+        User user = userCache.getByOpenid(openid);
         //如果是新用户，自动完成注册
         if (user == null){
+            user = register(openid);
+        }
+
+        //返回这个用户对象
+        return user;
+    }
+
+    /**
+     * 注册新用户
+     * 本实例内按openid加锁后再查一次；其他实例已注册时插入会违反openid唯一约束，改为查询已注册的用户
+     * @param openid
+     * @return
+     */
+    private User register(String openid) {
+        synchronized (REGISTER_LOCKS[(openid.hashCode() & 0x7fffffff) % REGISTER_LOCKS.length]) {
+            User user = userCache.getByOpenid(openid);
+            if (user != null) {
+                return user;
+            }
             user = User.builder()
                     .openid(openid)
                     .createTime(LocalDateTime.now())
                     .build();
-            userMapper.insert(user);
+            try {
+                return userCache.register(user);
+            } catch (DuplicateKeyException e) {
+                log.info("用户已由其他实例注册：{}", openid);
+                return userCache.getByOpenid(openid);
+            }
         }
-
-        //返回这个用户对象
-        return user;
     }
     /**
      * 调用微信接口服务，获取微信用户的openid
@@ -63,7 +101,16 @@ public class UserServiceImpl implements UserService {
         map.put("secret",weChatProperties.getSecret());
         map.put("js_code",code);
         map.put("grant_type","authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN, map);
+        //微信接口熔断或并发已满时快速失败，不占用请求线程等待
+        String json = circuitBreakerRegistry.get(CIRCUIT_BREAKER).execute(() -> {
+            String body = HttpClientUtil.doGet(weChatProperties.getApiBaseUrl() + WX_LOGIN, map);
+            if (body.isEmpty()) {
+                throw new IllegalStateException("微信登录接口无响应");
+            }
+            return body;
+        }, e -> {
+            throw new ServiceUnavailableException(MessageConstant.SERVICE_UNAVAILABLE);
+        });
 
         JSONObject jsonObject = JSON.parseObject(json);
         String openid = jsonObject.getString("openid");
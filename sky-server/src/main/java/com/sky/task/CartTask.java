@@ -0,0 +1,78 @@
+package com.sky.task;
+
+import com.sky.cart.RedisCartStore;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 购物车定时任务，将redis中有改动的购物车异步回写数据库，清理废弃的购物车
+ */
+@Component
+@Slf4j
+public class CartTask {
+
+    @Autowired(required = false)
+    private RedisCartStore redisCartStore;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private CartProperties cartProperties;
+
+    /**
+     * 每2秒回写一次，一次处理不完的留到下一轮
+     */
+    @Scheduled(fixedDelay = 2000)
+    public void flushShoppingCart() {
+        if (redisCartStore == null) {
+            return;
+        }
+        int count = redisCartStore.flush();
+        if (count > 0) {
+            log.debug("购物车回写数据库，用户数：{}", count);
+        }
+    }
+
+    /**
+     * 清理废弃的购物车，每天凌晨3点执行
+     * 按用户分批查出最后修改时间早于期限的购物车，整车删除并从redis中淘汰，每批之间停顿，避免一条大delete长时间锁表
+     * redis存储方式下先从redis淘汰，有改动还没有回写的购物车（数据库中的修改时间还是旧的）跳过，不删除
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void compactAbandonedCart() {
+        LocalDateTime time = LocalDateTime.now().minusDays(cartProperties.getAbandonDays());
+        log.info("清理{}之后没有修改过的购物车", time);
+
+        int total = 0;
+        Long afterUserId = 0L;
+        for (int chunk = 0; chunk < cartProperties.getCompactMaxChunks(); chunk++) {
+            List<Long> userIds = shoppingCartMapper.listUserIdsByUpdateTimeLT(time, afterUserId,
+                    cartProperties.getCompactChunkSize());
+            if (userIds.isEmpty()) {
+                break;
+            }
+            List<Long> removable = redisCartStore != null ? redisCartStore.evictUnlessDirty(userIds) : userIds;
+            if (!removable.isEmpty()) {
+                shoppingCartMapper.deleteByUserIdsAndUpdateTimeLT(removable, time);
+            }
+            total += removable.size();
+            afterUserId = userIds.get(userIds.size() - 1);
+            if (userIds.size() < cartProperties.getCompactChunkSize()) {
+                break;
+            }
+            try {
+                Thread.sleep(cartProperties.getCompactPauseMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("废弃购物车清理完成，清理用户数：{}", total);
+    }
+}
@@ -2,6 +2,7 @@ package com.sky.task;
 
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.websocket.OrderStatusPublisher;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -20,6 +21,8 @@ public class OrderTask {
 
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private OrderStatusPublisher orderStatusPublisher;
 
     /**
      * 处理待支付订单，每分钟处理一次
@@ -44,6 +47,7 @@ public class OrderTask {
                 order.setCancelReason("支付超时，自动取消");
                 order.setCancelTime(LocalDateTime.now());
                 orderMapper.update(order);
+                orderStatusPublisher.publish(order, Orders.PENDING_PAYMENT, Orders.CANCELLED);
             });
         }
 
@@ -68,6 +72,7 @@ public class OrderTask {
             ordersList.forEach(order -> {
                 order.setStatus(Orders.COMPLETED);
                 orderMapper.update(order);
+                orderStatusPublisher.publish(order, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED);
             });
         }
     }
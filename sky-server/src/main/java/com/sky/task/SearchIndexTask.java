@@ -0,0 +1,52 @@
+package com.sky.task;
+
+import com.sky.search.SearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 搜索索引定时任务
+ */
+@Component
+@Slf4j
+public class SearchIndexTask {
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    //上一次检查时索引是否已过期
+    private boolean staleLastCheck;
+
+    /**
+     * 每10秒从redis读取一次版本号，查询时据此判断索引是否过期，不需要每次查询都访问redis
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void refreshVersion() {
+        searchIndex.refreshVersion();
+    }
+
+    /**
+     * 每天凌晨4点重新加载，淘汰超出时间范围的订单
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void reload() {
+        log.info("定时重新加载搜索索引");
+        searchIndex.load();
+    }
+
+    /**
+     * 每分钟检查一次索引是否过期，连续两次过期（不是消息在途造成的）时从数据库重新加载
+     */
+    @Scheduled(cron = "0 * * * * ?")
+    public void reloadIfStale() {
+        boolean stale = searchIndex.isStale();
+        if (stale && staleLastCheck) {
+            log.info("搜索索引落后于其他实例，重新加载");
+            searchIndex.load();
+            stale = false;
+        }
+        staleLastCheck = stale;
+    }
+}
@@ -0,0 +1,32 @@
+package com.sky.task;
+
+import com.sky.auth.TokenRevocationStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 令牌吊销记录定时任务
+ */
+@Component
+public class TokenRevocationTask {
+
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    /**
+     * 每小时清理一次已过期令牌的吊销记录并重建布隆过滤器
+     */
+    @Scheduled(cron = "0 0 * * * ?")
+    public void rebuild() {
+        tokenRevocationStore.rebuild();
+    }
+
+    /**
+     * 每分钟检查一次是否错过了其他实例的吊销通知（例如与redis断开重连期间），错过时立即重建
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void syncIfStale() {
+        tokenRevocationStore.syncIfStale();
+    }
+}
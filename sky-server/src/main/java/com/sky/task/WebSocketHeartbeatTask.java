@@ -0,0 +1,27 @@
+package com.sky.task;
+
+import com.sky.websocket.SseHub;
+import com.sky.websocket.WebSocketServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * WebSocket心跳定时任务
+ */
+@Component
+public class WebSocketHeartbeatTask {
+    @Autowired
+    private WebSocketServer webSocketServer;
+    @Autowired
+    private SseHub sseHub;
+
+    /**
+     * 定时向客户端发送ping并清理超时没有响应的连接，SSE连接发送心跳注释
+     */
+    @Scheduled(fixedDelayString = "${sky.websocket.heartbeat-interval-millis:30000}")
+    public void heartbeat() {
+        webSocketServer.heartbeat();
+        sseHub.heartbeat();
+    }
+}
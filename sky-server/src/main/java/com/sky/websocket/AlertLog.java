@@ -0,0 +1,288 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推送消息日志：按主题保存最近推送的消息及其序号，客户端断线重连时带上最后收到的序号，只补发缺失的消息
+ * 序号由redis自增生成，所有实例共用一个递增序列
+ * 每个主题一个redis stream（ws:alert:log:{主题}），由发布消息的实例写入，补发时从stream读取，与客户端连接到哪个实例无关；
+ * shop、board 各保留 alertLogCapacity 条，消息量大的主题不会挤掉其他主题的消息，order:{id}、user:{id} 保留较少的条数并自动过期
+ * 本机内存中同样按主题保留最近的消息（order、user主题共用一个缓冲区），未开启stream或redis不可用时从内存补发
+ * 其他实例发布的消息可能晚于序号更大的消息到达，补发时从 lastSeq - alertReplayWindow 开始，重复的消息由客户端按seq去重
+ */
+@Component
+@Slf4j
+public class AlertLog {
+
+    private static final String SEQ_KEY = "ws:alert:seq";
+    private static final String STREAM_KEY = "ws:alert:log:";
+
+    //order:{id}、user:{id} 主题共用的本机缓冲区
+    private static final String PRIVATE_TOPICS = "*";
+
+    //从stream倒序读取时每页的条数
+    private static final int PAGE_SIZE = 100;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //本机缓冲区：shop、board、PRIVATE_TOPICS -> 环形缓冲区
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    //redis不可用时使用的本地序号
+    private final AtomicLong localSeq = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (webSocketProperties.isAlertStreamEnabled()) {
+            restoreSeq();
+        }
+    }
+
+    /**
+     * 生成下一个序号
+     *
+     * @return
+     */
+    public long nextSeq() {
+        try {
+            Long seq = stringRedisTemplate.opsForValue().increment(SEQ_KEY);
+            if (seq != null) {
+                localSeq.accumulateAndGet(seq, Math::max);
+                return seq;
+            }
+        } catch (Exception e) {
+            log.warn("生成推送消息序号失败，使用本地序号", e);
+        }
+        return localSeq.incrementAndGet();
+    }
+
+    /**
+     * 记录一条已推送的消息
+     *
+     * @param seq
+     * @param topic
+     * @param message
+     * @param mirror  是否写入redis stream，只由发布消息的实例写入
+     */
+    public void append(long seq, String topic, String message, boolean mirror) {
+        ring(topic).add(new Entry(seq, topic, message));
+        localSeq.accumulateAndGet(seq, Math::max);
+        if (mirror && webSocketProperties.isAlertStreamEnabled()) {
+            String key = STREAM_KEY + topic;
+            try {
+                Map<String, String> fields = new HashMap<>();
+                fields.put("seq", String.valueOf(seq));
+                fields.put("message", message);
+                stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(key).ofMap(fields));
+                //精确裁剪：stream长度未达到上限时说明没有消息被裁掉，补发时据此判断消息是否完整
+                stringRedisTemplate.opsForStream().trim(key, capacity(topic));
+                if (isPrivate(topic)) {
+                    stringRedisTemplate.expire(key, webSocketProperties.getAlertLogPrivateTtlHours(), TimeUnit.HOURS);
+                }
+            } catch (Exception e) {
+                log.warn("推送消息写入redis stream失败，主题：{}", topic, e);
+            }
+        }
+    }
+
+    /**
+     * 查询序号之后、属于指定主题的消息，按序号排序，同一条消息发往多个主题时只返回一次
+     * 开启stream时从redis读取，否则或读取失败时从本机内存读取
+     *
+     * @param lastSeq 客户端最后收到的序号
+     * @param topics  客户端订阅的主题
+     * @return 缺失的消息已被裁掉无法补全时返回null，客户端需要重新查询
+     */
+    public List<Entry> since(long lastSeq, Collection<String> topics) {
+        long from = lastSeq - webSocketProperties.getAlertReplayWindow();
+        Map<Long, Entry> result = new LinkedHashMap<>();
+        boolean fromStream = webSocketProperties.isAlertStreamEnabled();
+        for (String topic : topics) {
+            List<Entry> entries = null;
+            if (fromStream) {
+                try {
+                    entries = fromStream(topic, lastSeq, from);
+                } catch (Exception e) {
+                    log.warn("从redis stream读取推送消息失败，从本机内存补发，主题：{}", topic, e);
+                    fromStream = false;
+                }
+            }
+            if (!fromStream) {
+                entries = ring(topic).since(lastSeq, from, topic);
+            }
+            if (entries == null) {
+                return null;
+            }
+            for (Entry entry : entries) {
+                result.putIfAbsent(entry.seq, entry);
+            }
+        }
+        List<Entry> list = new ArrayList<>(result.values());
+        list.sort(Comparator.comparingLong(Entry::getSeq));
+        return list;
+    }
+
+    /**
+     * 从新到旧分页读取主题的stream，读到一整页都不晚于from时停止
+     *
+     * @return stream已被裁剪过且剩余最早的消息晚于lastSeq时，中间可能有消息被裁掉，返回null
+     */
+    private List<Entry> fromStream(String topic, long lastSeq, long from) {
+        String key = STREAM_KEY + topic;
+        List<Entry> entries = new ArrayList<>();
+        Range<String> range = Range.unbounded();
+        long oldestSeq = Long.MAX_VALUE;
+        boolean reachedStart = false;
+        while (true) {
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .reverseRange(key, range, RedisZSetCommands.Limit.limit().count(PAGE_SIZE));
+            if (records == null || records.size() < PAGE_SIZE) {
+                reachedStart = true;
+            }
+            if (records == null || records.isEmpty()) {
+                break;
+            }
+            boolean newer = false;
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<Object, Object> fields = record.getValue();
+                long seq = Long.parseLong((String) fields.get("seq"));
+                oldestSeq = Math.min(oldestSeq, seq);
+                if (seq > from) {
+                    newer = true;
+                    entries.add(new Entry(seq, topic, (String) fields.get("message")));
+                }
+            }
+            if (reachedStart || !newer) {
+                break;
+            }
+            //下一页：比本页最早一条更早的记录
+            RecordId last = records.get(records.size() - 1).getId();
+            range = Range.leftUnbounded(Range.Bound.exclusive(last.getValue()));
+        }
+        if (oldestSeq <= lastSeq) {
+            return entries;
+        }
+        //读到了stream开头：长度未达到上限说明没有消息被裁掉
+        if (reachedStart) {
+            Long size = stringRedisTemplate.opsForStream().size(key);
+            if (size != null && size < capacity(topic)) {
+                return entries;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 服务重启后本地序号从redis中的序号继续，redis暂时不可用时也不会生成重复的序号
+     */
+    private void restoreSeq() {
+        try {
+            String seq = stringRedisTemplate.opsForValue().get(SEQ_KEY);
+            if (seq != null) {
+                localSeq.accumulateAndGet(Long.parseLong(seq), Math::max);
+            }
+        } catch (Exception e) {
+            log.warn("读取推送消息序号失败", e);
+        }
+    }
+
+    private Ring ring(String topic) {
+        return rings.computeIfAbsent(isPrivate(topic) ? PRIVATE_TOPICS : topic,
+                key -> new Ring(webSocketProperties.getAlertLogCapacity()));
+    }
+
+    private int capacity(String topic) {
+        return isPrivate(topic) ? webSocketProperties.getAlertLogPrivateCapacity() : webSocketProperties.getAlertLogCapacity();
+    }
+
+    private static boolean isPrivate(String topic) {
+        return !WebSocketServer.TOPIC_SHOP.equals(topic) && !WebSocketServer.TOPIC_ORDER_BOARD.equals(topic);
+    }
+
+    /**
+     * 本机内存中的环形缓冲区
+     */
+    private static class Ring {
+        private final Entry[] entries;
+        private int next;
+        //已被覆盖的最大序号，客户端最后收到的序号小于它时，缺失的消息已无法补发
+        private long overwrittenSeq;
+
+        Ring(int capacity) {
+            entries = new Entry[capacity];
+        }
+
+        synchronized void add(Entry entry) {
+            Entry old = entries[next];
+            if (old != null) {
+                overwrittenSeq = Math.max(overwrittenSeq, old.seq);
+            }
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+        }
+
+        synchronized List<Entry> since(long lastSeq, long from, String topic) {
+            if (lastSeq < overwrittenSeq) {
+                return null;
+            }
+            List<Entry> result = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (entry != null && entry.seq > from && topic.equals(entry.topic)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 一条推送消息
+     */
+    public static class Entry {
+        private final long seq;
+        private final String topic;
+        private final String message;
+
+        public Entry(long seq, String topic, String message) {
+            this.seq = seq;
+            this.topic = topic;
+            this.message = message;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
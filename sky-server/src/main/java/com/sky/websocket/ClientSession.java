@@ -0,0 +1,191 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个WebSocket客户端连接
+ * 消息先进入有界队列，再通过 getAsyncRemote 逐条异步发送，同一时刻只有一条消息在发送中，
+ * 发送方线程（例如处理支付回调的请求线程）不会被慢客户端阻塞
+ * 开启批量模式的连接，消息先经过 MessageBatcher 合并为JSON数组帧再入队
+ */
+@Slf4j
+public class ClientSession {
+
+    private final String sid;
+    private final WebSocketPrincipal principal;
+    private final Session session;
+    private final BlockingQueue<String> queue;
+    private final WebSocketMetrics metrics;
+
+    //是否有消息正在发送
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    //已订阅的主题
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+
+    //最后一次收到客户端消息或pong的时间
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+
+    //批量模式下的消息合并器，非批量模式为null
+    private MessageBatcher batcher;
+
+    public ClientSession(String sid, WebSocketPrincipal principal, Session session, int queueCapacity, WebSocketMetrics metrics) {
+        this.sid = sid;
+        this.principal = principal;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 开启批量模式
+     *
+     * @param windowMillis 收集窗口（毫秒）
+     * @param maxMessages  一帧最多包含的消息数
+     * @param scheduler    窗口到期时执行发送的线程
+     */
+    public void enableBatching(long windowMillis, int maxMessages, ScheduledExecutorService scheduler) {
+        this.batcher = new MessageBatcher(windowMillis, maxMessages, scheduler, frame -> {
+            //合并后的帧异步入队，队列已满时由这里断开慢客户端
+            if (!send(frame)) {
+                log.warn("客户端：{}消费太慢，断开连接", sid);
+                metrics.recordEvicted();
+                close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer");
+            }
+        });
+    }
+
+    /**
+     * 发送消息，批量模式下进入合并器，否则直接入队
+     *
+     * @param message
+     * @param collapseKey 合并键，批量模式下同一窗口内相同合并键的消息只发送一条，为null时不合并
+     * @return 队列已满返回false，说明客户端消费太慢
+     */
+    public boolean send(String message, String collapseKey) {
+        if (batcher != null) {
+            batcher.add(message, collapseKey);
+            return true;
+        }
+        return send(message);
+    }
+
+    /**
+     * 消息入队并触发发送
+     *
+     * @param message
+     * @return 队列已满返回false，说明客户端消费太慢
+     */
+    private boolean send(String message) {
+        if (!queue.offer(message)) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * 没有消息在发送时，取出队首消息异步发送，发送完成后继续发送下一条
+     */
+    private void drain() {
+        while (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+            String message = queue.poll();
+            if (message == null) {
+                sending.set(false);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    metrics.recordSend(System.nanoTime() - start, result.isOK());
+                    sending.set(false);
+                    if (result.isOK()) {
+                        drain();
+                    } else {
+                        log.warn("WebSocket消息发送失败，客户端：{}", sid, result.getException());
+                        close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "send failed");
+                    }
+                });
+            } catch (RuntimeException e) {
+                metrics.recordSend(System.nanoTime() - start, false);
+                sending.set(false);
+                log.warn("WebSocket消息发送失败，客户端：{}", sid, e);
+                close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "send failed");
+            }
+            return;
+        }
+    }
+
+    /**
+     * 发送ping，客户端回复pong后由 WebSocketServer 更新活跃时间
+     */
+    public void ping() {
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+        } catch (IOException | RuntimeException e) {
+            log.debug("发送ping失败，客户端：{}", sid, e);
+        }
+    }
+
+    /**
+     * 收到客户端消息或pong时调用
+     */
+    public void touch() {
+        lastActiveMillis = System.currentTimeMillis();
+    }
+
+    public long getLastActiveMillis() {
+        return lastActiveMillis;
+    }
+
+    /**
+     * 关闭连接，连接关闭后由 WebSocketServer.onClose 从注册表中移除
+     */
+    public void close(CloseReason.CloseCode code, String reason) {
+        queue.clear();
+        try {
+            if (session.isOpen()) {
+                session.close(new CloseReason(code, reason));
+            }
+        } catch (IOException e) {
+            log.warn("关闭WebSocket连接失败，客户端：{}", sid, e);
+        }
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    /**
+     * 握手时校验令牌得到的身份
+     */
+    public WebSocketPrincipal getPrincipal() {
+        return principal;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * 当前待发送的消息数
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,208 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群消息总线：多个服务实例部署时，通过redis发布订阅把消息转发到所有实例，由各实例推送给本机的WebSocket、SSE连接
+ * 消息带有实例id和消息id：本实例发布的消息直接在本机推送，收到自己发布的消息时跳过；消息id用于去重
+ * 每条消息分配全局递增的序号（消息中的seq字段）并记入 AlertLog，客户端重连时据此补发
+ * 发布消息只入队，分配序号、写入redis和推送都在单独的发布线程中按发布顺序执行，不阻塞业务线程
+ */
+@Component
+@Slf4j
+public class ClusterBus implements MessageListener {
+
+    private static final String CHANNEL = "ws:bus";
+
+    //去重时记住的最近消息id数量
+    private static final int DEDUPE_SIZE = 10000;
+
+    //当前实例id
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    //最近收到的消息id
+    private final Map<String, Boolean> recentIds = new LinkedHashMap<String, Boolean>(DEDUPE_SIZE, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > DEDUPE_SIZE;
+        }
+    };
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private List<MessageSink> messageSinks;
+    @Autowired
+    private AlertLog alertLog;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //发布线程，只有一个线程，消息按发布顺序分配序号；队列满时由调用方线程执行，不丢消息
+    private ThreadPoolExecutor publishExecutor;
+
+    @PostConstruct
+    public void init() {
+        publishExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(webSocketProperties.getPublishQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "ws-publish");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        log.info("集群消息总线已启动，实例id：{}", nodeId);
+    }
+
+    /**
+     * 停止前发布完已入队的消息
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        publishExecutor.shutdown();
+        if (!publishExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("集群消息总线停止时仍有{}条消息未发布", publishExecutor.getQueue().size());
+        }
+    }
+
+    /**
+     * 向所有实例上订阅了主题的客户端发送消息
+     *
+     * @param topic
+     * @param message
+     */
+    public void publish(String topic, String message) {
+        publish(topic, message, null);
+    }
+
+    /**
+     * 向所有实例上订阅了主题的客户端发送消息，批量模式的客户端在同一窗口内相同合并键的消息只收到一条
+     *
+     * @param topic
+     * @param message
+     * @param collapseKey 合并键，为null时不合并
+     */
+    public void publish(String topic, String message, String collapseKey) {
+        publishExecutor.execute(() -> doPublish(topic, message, collapseKey));
+    }
+
+    /**
+     * 在当前事务提交后发布消息，避免推送了回滚的数据；没有事务时立即发布
+     *
+     * @param topic
+     * @param message
+     */
+    public void publishAfterCommit(String topic, String message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(topic, message);
+                }
+            });
+        } else {
+            publish(topic, message);
+        }
+    }
+
+    private void doPublish(String topic, String message, String collapseKey) {
+        String msgId = nodeId + ":" + sequence.incrementAndGet();
+        long seq = alertLog.nextSeq();
+        message = withSeq(message, seq);
+        //本机直接推送，不依赖redis
+        deliver(msgId, seq, topic, message, collapseKey, true);
+
+        JSONObject envelope = new JSONObject();
+        envelope.put("nodeId", nodeId);
+        envelope.put("msgId", msgId);
+        envelope.put("seq", seq);
+        envelope.put("topic", topic);
+        envelope.put("payload", message);
+        envelope.put("collapseKey", collapseKey);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, envelope.toJSONString());
+        } catch (Exception e) {
+            log.warn("集群消息发布失败，只推送到本机，主题：{}", topic, e);
+        }
+    }
+
+    /**
+     * 收到其他实例发布的消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject envelope;
+        try {
+            envelope = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.warn("无法解析集群消息", e);
+            return;
+        }
+        if (envelope == null || nodeId.equals(envelope.getString("nodeId"))) {
+            return;
+        }
+        deliver(envelope.getString("msgId"), envelope.getLongValue("seq"), envelope.getString("topic"),
+                envelope.getString("payload"), envelope.getString("collapseKey"), false);
+    }
+
+    /**
+     * 记入消息日志并推送到本机的所有推送通道，重复的消息只推送一次
+     *
+     * @param local 是否本实例发布的消息，只由发布消息的实例写入redis stream
+     */
+    private void deliver(String msgId, long seq, String topic, String message, String collapseKey, boolean local) {
+        synchronized (recentIds) {
+            if (recentIds.put(msgId, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        alertLog.append(seq, topic, message, local);
+        for (MessageSink messageSink : messageSinks) {
+            messageSink.deliver(seq, topic, message, collapseKey);
+        }
+    }
+
+    /**
+     * 在JSON消息中加入序号字段
+     */
+    private static String withSeq(String message, long seq) {
+        try {
+            JSONObject jsonObject = JSON.parseObject(message);
+            jsonObject.put("seq", seq);
+            return jsonObject.toJSONString();
+        } catch (Exception e) {
+            //不是JSON对象的消息原样推送
+            return message;
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
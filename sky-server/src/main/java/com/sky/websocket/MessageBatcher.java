@@ -0,0 +1,98 @@
+package com.sky.websocket;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 消息微批：在一个时间窗口内收集的消息合并为一个JSON数组帧发送，窗口内相同合并键的消息（例如同一订单的催单）只保留第一条
+ * 高峰期减少发送次数和浏览器重复渲染
+ */
+public class MessageBatcher {
+
+    private final long windowMillis;
+    private final int maxMessages;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<String> frameConsumer;
+
+    //以下字段由this保护
+    private final List<String> pending = new ArrayList<>();
+    private final Set<String> pendingKeys = new HashSet<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param windowMillis  收集窗口（毫秒），窗口内第一条消息到达时开始计时
+     * @param maxMessages   一帧最多包含的消息数，达到后立即发送
+     * @param scheduler     窗口到期时执行发送的线程
+     * @param frameConsumer 合并后的帧
+     */
+    public MessageBatcher(long windowMillis, int maxMessages, ScheduledExecutorService scheduler, Consumer<String> frameConsumer) {
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.scheduler = scheduler;
+        this.frameConsumer = frameConsumer;
+    }
+
+    /**
+     * 添加一条消息
+     *
+     * @param message     JSON消息
+     * @param collapseKey 合并键，为null时不合并
+     */
+    public void add(String message, String collapseKey) {
+        String frame = null;
+        synchronized (this) {
+            if (collapseKey != null && !pendingKeys.add(collapseKey)) {
+                return;
+            }
+            pending.add(message);
+            if (pending.size() >= maxMessages) {
+                frame = takeFrame();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (frame != null) {
+            frameConsumer.accept(frame);
+        }
+    }
+
+    /**
+     * 窗口到期，发送已收集的消息
+     */
+    private void flush() {
+        String frame;
+        synchronized (this) {
+            flushScheduled = false;
+            frame = takeFrame();
+        }
+        if (frame != null) {
+            frameConsumer.accept(frame);
+        }
+    }
+
+    /**
+     * 取出已收集的消息拼成JSON数组，没有消息时返回null
+     */
+    private String takeFrame() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        StringBuilder frame = new StringBuilder("[");
+        for (int i = 0; i < pending.size(); i++) {
+            if (i > 0) {
+                frame.append(',');
+            }
+            frame.append(pending.get(i));
+        }
+        frame.append(']');
+        pending.clear();
+        pendingKeys.clear();
+        return frame.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.sky.websocket;
+
+/**
+ * 本机的消息推送通道（WebSocket、SSE），由 ClusterBus 把消息分发给所有通道
+ */
+public interface MessageSink {
+
+    /**
+     * 向本机订阅了主题的客户端推送消息
+     *
+     * @param seq         消息序号
+     * @param topic       主题
+     * @param message     JSON消息
+     * @param collapseKey 合并键，为null时不合并
+     */
+    void deliver(long seq, String topic, String message, String collapseKey);
+}
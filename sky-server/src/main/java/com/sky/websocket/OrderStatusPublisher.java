@@ -0,0 +1,49 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.Orders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单状态变更推送
+ * 每次订单状态变化推送一条 {"type":3,"orderId":..,"number":..,"from":..,"to":..} 消息，
+ * 发往商家订单看板（board）、该订单（order:{id}）和下单用户（user:{userId}）三个主题，
+ * 订单页面据此更新列表和各状态数量，不需要轮询查询
+ * order:{id}、user:{userId} 主题只推送给通过 WebSocketServer.canSubscribe 校验的订阅者（下单用户本人），
+ * 断线补发同样按该规则校验，其他用户和管理端收不到这两个主题的消息
+ */
+@Component
+public class OrderStatusPublisher {
+
+    //消息类型，3表示订单状态变更
+    public static final int TYPE_STATUS_CHANGED = 3;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    /**
+     * 推送订单状态变更，在当前事务提交后推送，避免推送了回滚的状态
+     *
+     * @param orders 订单，需要包含id、订单号和用户id
+     * @param from   原状态，新建订单为null
+     * @param to     新状态
+     */
+    public void publish(Orders orders, Integer from, Integer to) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", TYPE_STATUS_CHANGED);
+        map.put("orderId", orders.getId());
+        map.put("number", orders.getNumber());
+        map.put("from", from);
+        map.put("to", to);
+        String message = JSON.toJSONString(map);
+        clusterBus.publishAfterCommit(WebSocketServer.TOPIC_ORDER_BOARD, message);
+        clusterBus.publishAfterCommit(WebSocketServer.orderTopic(orders.getId()), message);
+        if (orders.getUserId() != null) {
+            clusterBus.publishAfterCommit(WebSocketServer.userTopic(orders.getUserId()), message);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个SSE连接
+ * SseEmitter.send 是阻塞写，消息先进入连接自己的有界队列，再由推送线程池中的一个线程逐条发送，同一时刻每个连接最多一个线程在发送，
+ * 慢客户端只会填满自己的队列，不会拖慢其他连接
+ * 队列已满时丢弃积压的消息，改为发送一条需要刷新的提示，客户端不会在不知情的情况下漏掉消息
+ */
+@Slf4j
+public class SseConnection {
+
+    //补发或发送积压过多时需要刷新的提示
+    static final String RESYNC_MESSAGE = "{\"type\":0,\"content\":\"部分消息已过期，请刷新\"}";
+
+    private final SseEmitter emitter;
+    private final Set<String> topics;
+    private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+    private final Executor executor;
+    private final Runnable onClose;
+
+    //是否有线程正在发送
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    //是否需要丢弃积压的消息，改为发送刷新提示
+    private final AtomicBoolean resync = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param emitter
+     * @param topics        订阅的主题
+     * @param queueCapacity 待发送队列的容量
+     * @param executor      推送线程池
+     * @param onClose       连接关闭时执行一次，释放连接数
+     */
+    public SseConnection(SseEmitter emitter, Set<String> topics, int queueCapacity, Executor executor, Runnable onClose) {
+        this.emitter = emitter;
+        this.topics = topics;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = executor;
+        this.onClose = onClose;
+    }
+
+    /**
+     * 发送消息，队列已满时改为发送刷新提示
+     *
+     * @param seq     消息序号，作为事件id
+     * @param message
+     */
+    public void send(long seq, String message) {
+        if (closed.get()) {
+            return;
+        }
+        if (!queue.offer(SseEmitter.event().id(String.valueOf(seq)).data(message, MediaType.APPLICATION_JSON))) {
+            log.warn("SSE客户端消费太慢，丢弃积压的消息，通知客户端刷新");
+            resync.set(true);
+        }
+        drain();
+    }
+
+    /**
+     * 丢弃积压的消息，发送刷新提示
+     */
+    public void resync() {
+        resync.set(true);
+        drain();
+    }
+
+    /**
+     * 发送注释行作为心跳，让代理保持连接，同时发现已断开的连接；队列中有消息时不需要心跳
+     */
+    public void ping() {
+        if (queue.isEmpty() && queue.offer(SseEmitter.event().comment("ping"))) {
+            drain();
+        }
+    }
+
+    /**
+     * 连接已由容器结束（完成、超时、出错），只释放资源
+     */
+    public void release() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            onClose.run();
+        }
+    }
+
+    /**
+     * 服务关闭时结束连接
+     */
+    public void complete() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            onClose.run();
+            emitter.complete();
+        }
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * 没有线程在发送时，提交一个发送任务
+     */
+    private void drain() {
+        if (closed.get() || !sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            //服务关闭中
+            sending.set(false);
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed.get()) {
+                SseEmitter.SseEventBuilder event;
+                if (resync.getAndSet(false)) {
+                    queue.clear();
+                    event = SseEmitter.event().data(RESYNC_MESSAGE, MediaType.APPLICATION_JSON);
+                } else {
+                    event = queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                }
+                emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            //客户端已断开
+            if (closed.compareAndSet(false, true)) {
+                queue.clear();
+                onClose.run();
+                emitter.completeWithError(e);
+            }
+        } finally {
+            sending.set(false);
+        }
+        //退出循环与新消息入队之间可能有竞争，再检查一次
+        if (!queue.isEmpty() || resync.get()) {
+            drain();
+        }
+    }
+}
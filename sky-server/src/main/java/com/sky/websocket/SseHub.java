@@ -0,0 +1,127 @@
+package com.sky.websocket;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.TooManyConnectionsException;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE推送：给无法使用WebSocket的客户端（代理不支持协议升级）推送与WebSocket相同的消息
+ * 消息由 ClusterBus 分发，事件id即消息序号，浏览器重连时自动带上 Last-Event-ID，据此补发缺失的消息
+ * 每个连接有自己的有界发送队列（见 SseConnection），由推送线程池发送，发布消息的线程只负责入队
+ * 连接数由信号量限制，建立连接前先获取许可，连接结束时释放
+ */
+@Component
+@Slf4j
+public class SseHub implements MessageSink {
+
+    //连接 -> 连接的发送队列和订阅的主题
+    private final Map<SseEmitter, SseConnection> connections = new ConcurrentHashMap<>();
+
+    private Semaphore permits;
+
+    //推送线程池，每个连接同一时刻最多一个发送任务，任务数不超过连接数
+    private ThreadPoolExecutor pushExecutor;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(webSocketProperties.getSseMaxConnections());
+        AtomicInteger index = new AtomicInteger();
+        int threads = webSocketProperties.getSsePushThreads();
+        pushExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "sse-push-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 建立SSE连接
+     *
+     * @param principal   连接的身份，补发消息时据此校验主题
+     * @param topics      订阅的主题，需要已经过 WebSocketServer.canSubscribe 校验
+     * @param lastEventId 浏览器重连时最后收到的事件id，首次连接为null
+     * @return
+     */
+    public SseEmitter subscribe(WebSocketPrincipal principal, Set<String> topics, Long lastEventId) {
+        if (!permits.tryAcquire()) {
+            throw new TooManyConnectionsException(MessageConstant.TOO_MANY_CONNECTIONS);
+        }
+        SseEmitter emitter = new SseEmitter(webSocketProperties.getSseTimeoutMillis());
+        SseConnection connection = new SseConnection(emitter, topics, webSocketProperties.getSendQueueCapacity(),
+                pushExecutor, () -> {
+            connections.remove(emitter);
+            permits.release();
+        });
+        emitter.onCompletion(connection::release);
+        emitter.onTimeout(() -> {
+            //超时后需要主动结束，否则容器按异步请求超时处理，响应503
+            connection.release();
+            emitter.complete();
+        });
+        emitter.onError(e -> connection.release());
+        connections.put(emitter, connection);
+
+        if (lastEventId != null) {
+            List<AlertLog.Entry> missed = WebSocketServer.missedMessages(principal, lastEventId, topics);
+            if (missed == null) {
+                connection.resync();
+            } else {
+                //补发的消息超过队列容量时由队列转为刷新提示
+                for (AlertLog.Entry entry : missed) {
+                    connection.send(entry.getSeq(), entry.getMessage());
+                }
+            }
+        }
+        return emitter;
+    }
+
+    @Override
+    public void deliver(long seq, String topic, String message, String collapseKey) {
+        for (SseConnection connection : connections.values()) {
+            if (connection.getTopics().contains(topic)) {
+                connection.send(seq, message);
+            }
+        }
+    }
+
+    /**
+     * 发送心跳，让代理保持连接，同时发现已断开的连接
+     */
+    public void heartbeat() {
+        connections.values().forEach(SseConnection::ping);
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pushExecutor.shutdownNow();
+        connections.values().forEach(SseConnection::complete);
+        connections.clear();
+    }
+}
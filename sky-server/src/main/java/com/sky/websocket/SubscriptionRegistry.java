@@ -0,0 +1,77 @@
+package com.sky.websocket;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 主题订阅表：主题 -> 订阅该主题的连接
+ * 推送消息时只发给订阅了对应主题的连接，而不是所有连接
+ */
+public class SubscriptionRegistry {
+
+    private final Map<String, Set<ClientSession>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅主题
+     *
+     * @param clientSession
+     * @param topic
+     */
+    public void subscribe(ClientSession clientSession, String topic) {
+        //在compute中修改集合，避免与取消订阅时删除空集合发生竞争
+        subscribers.compute(topic, (key, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(clientSession);
+            return sessions;
+        });
+        clientSession.getTopics().add(topic);
+    }
+
+    /**
+     * 取消订阅主题
+     *
+     * @param clientSession
+     * @param topic
+     */
+    public void unsubscribe(ClientSession clientSession, String topic) {
+        clientSession.getTopics().remove(topic);
+        subscribers.computeIfPresent(topic, (key, sessions) -> {
+            sessions.remove(clientSession);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    /**
+     * 取消连接的所有订阅，连接关闭时调用
+     *
+     * @param clientSession
+     */
+    public void unsubscribeAll(ClientSession clientSession) {
+        for (String topic : clientSession.getTopics()) {
+            unsubscribe(clientSession, topic);
+        }
+    }
+
+    /**
+     * 查询订阅了主题的连接
+     *
+     * @param topic
+     * @return
+     */
+    public Collection<ClientSession> getSubscribers(String topic) {
+        Set<ClientSession> sessions = subscribers.get(topic);
+        return sessions == null ? Collections.emptySet() : sessions;
+    }
+
+    /**
+     * 当前有订阅者的主题数
+     */
+    public int getTopicCount() {
+        return subscribers.size();
+    }
+}
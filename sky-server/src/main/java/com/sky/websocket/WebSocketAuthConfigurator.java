@@ -0,0 +1,105 @@
+package com.sky.websocket;
+
+import com.sky.auth.JwtVerifiers;
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.HandshakeResponse;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket握手时校验jwt令牌
+ * 浏览器的WebSocket无法设置请求头，令牌可以放在请求参数中：管理端 ?token=，用户端 ?authentication=（与请求头名称相同）
+ * 校验通过后把 WebSocketPrincipal 存入会话属性，校验不通过的连接在 WebSocketServer.onOpen 中关闭
+ * 注意：配置器由容器创建，依赖保存在静态字段中
+ */
+@Component
+@Slf4j
+public class WebSocketAuthConfigurator extends ServerEndpointConfig.Configurator {
+
+    //会话属性中的身份
+    public static final String PRINCIPAL = "principal";
+
+    private static JwtProperties jwtProperties;
+
+    private static JwtVerifiers jwtVerifiers;
+
+    @Autowired
+    public void setJwtProperties(JwtProperties jwtProperties) {
+        WebSocketAuthConfigurator.jwtProperties = jwtProperties;
+    }
+
+    @Autowired
+    public void setJwtVerifiers(JwtVerifiers jwtVerifiers) {
+        WebSocketAuthConfigurator.jwtVerifiers = jwtVerifiers;
+    }
+
+    @Override
+    public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+        WebSocketPrincipal principal = authenticate(request);
+        if (principal != null) {
+            sec.getUserProperties().put(PRINCIPAL, principal);
+        } else {
+            sec.getUserProperties().remove(PRINCIPAL);
+        }
+    }
+
+    /**
+     * 依次尝试管理端令牌和用户端令牌
+     *
+     * @return 令牌无效时返回null
+     */
+    private static WebSocketPrincipal authenticate(HandshakeRequest request) {
+        String adminToken = token(request, jwtProperties.getAdminTokenName());
+        if (adminToken != null) {
+            try {
+                Claims claims = jwtVerifiers.getAdmin().verify(adminToken);
+                return new WebSocketPrincipal(true, Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString()));
+            } catch (Exception e) {
+                log.debug("WebSocket管理端令牌校验失败", e);
+            }
+        }
+        String userToken = token(request, jwtProperties.getUserTokenName());
+        if (userToken != null) {
+            try {
+                Claims claims = jwtVerifiers.getUser().verify(userToken);
+                return new WebSocketPrincipal(false, Long.valueOf(claims.get(JwtClaimsConstant.USER_ID).toString()));
+            } catch (Exception e) {
+                log.debug("WebSocket用户端令牌校验失败", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 先取请求头，没有时取请求参数
+     */
+    private static String token(HandshakeRequest request, String name) {
+        String token = first(request.getHeaders(), name);
+        return token != null ? token : first(request.getParameterMap(), name);
+    }
+
+    private static String first(Map<String, List<String>> values, String name) {
+        if (values == null) {
+            return null;
+        }
+        List<String> list = values.get(name);
+        if (list == null) {
+            //请求头名称不区分大小写
+            for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey())) {
+                    list = entry.getValue();
+                    break;
+                }
+            }
+        }
+        return list == null || list.isEmpty() ? null : list.get(0);
+    }
+}
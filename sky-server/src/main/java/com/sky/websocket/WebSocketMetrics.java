@@ -0,0 +1,72 @@
+package com.sky.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket发送统计：发送次数、失败次数、因消费太慢被断开的连接数、心跳超时被清理的连接数、发送耗时
+ */
+public class WebSocketMetrics {
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder reaped = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    /**
+     * 记录一次发送结果
+     *
+     * @param nanos 从开始发送到发送完成的耗时
+     * @param ok    是否发送成功
+     */
+    public void recordSend(long nanos, boolean ok) {
+        if (ok) {
+            sent.increment();
+        } else {
+            failed.increment();
+        }
+        sendNanos.add(nanos);
+        maxSendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void recordEvicted() {
+        evicted.increment();
+    }
+
+    public void recordReaped() {
+        reaped.increment();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    public long getReaped() {
+        return reaped.sum();
+    }
+
+    /**
+     * 平均发送耗时（毫秒）
+     */
+    public double getAvgSendMillis() {
+        long count = sent.sum() + failed.sum();
+        return count == 0 ? 0 : sendNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * 最大发送耗时（毫秒）
+     */
+    public double getMaxSendMillis() {
+        return maxSendNanos.get() / 1e6;
+    }
+}
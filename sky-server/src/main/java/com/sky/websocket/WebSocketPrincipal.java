@@ -0,0 +1,38 @@
+package com.sky.websocket;
+
+/**
+ * WebSocket连接的身份，在握手时由 WebSocketAuthConfigurator 根据令牌确定
+ */
+public class WebSocketPrincipal {
+
+    //true 管理端员工，false 用户端用户
+    private final boolean admin;
+
+    //员工id或用户id
+    private final Long id;
+
+    public WebSocketPrincipal(boolean admin, Long id) {
+        this.admin = admin;
+        this.id = id;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * 身份标识，例如 emp:1、user:2
+     */
+    public String getName() {
+        return (admin ? "emp:" : "user:") + id;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
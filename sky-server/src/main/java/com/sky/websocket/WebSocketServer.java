@@ -1,33 +1,147 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.WebSocketProperties;
+import com.sky.vo.WebSocketStatsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * WebSocket服务
+ * 客户端按主题订阅消息：shop 商家来单、催单提醒，board 商家订单看板（订单状态变更），
+ * order:{订单id} 某个订单的状态，user:{用户id} 用户自己的订单
+ * 握手时校验令牌（见 WebSocketAuthConfigurator），没有有效令牌的连接直接关闭；
+ * shop、board 只允许管理端订阅，user:{用户id} 只允许该用户订阅，order:{订单id} 只允许下单用户订阅，无权订阅的主题忽略
+ * 连接时可以通过参数 topics=order:1,user:2 指定订阅的主题，不指定时管理端订阅 shop，用户端订阅自己的 user:{用户id}；
+ * 连接后发送 {"action":"subscribe","topic":"order:1"} 或 {"action":"unsubscribe","topic":"order:1"} 修改订阅
+ * 连接参数 batch=1 时开启批量模式，短时间内的多条消息合并为一个JSON数组帧发送
+ * 每条消息带有递增的序号seq，断线重连时带上参数 lastSeq=最后收到的序号，补发断线期间订阅主题的消息；
+ * 缺失的消息已无法补全时收到 {"type":0} 消息，客户端需要重新查询订单列表。补发与新消息可能重复，客户端按seq去重
+ * 注意：每个连接由容器创建一个新的实例，连接注册表和配置都保存在静态字段中
  */
 @Component
-@ServerEndpoint("/ws/{sid}")//sid用于区分不同的客户端
-public class WebSocketServer {
+@ServerEndpoint(value = "/ws/{sid}", configurator = WebSocketAuthConfigurator.class)//sid用于区分同一身份的不同客户端
+@Slf4j
+public class WebSocketServer implements MessageSink {
+
+    //商家来单、催单提醒主题
+    public static final String TOPIC_SHOP = "shop";
+
+    //商家订单看板主题，推送所有订单的状态变更
+    public static final String TOPIC_ORDER_BOARD = "board";
+
+    //每个连接最多订阅的主题数
+    private static final int MAX_TOPICS_PER_SESSION = 32;
 
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static final Map<String, ClientSession> sessionMap = new ConcurrentHashMap<>();
+
+    private static final SubscriptionRegistry subscriptionRegistry = new SubscriptionRegistry();
+
+    //补发消息时需要刷新的提示
+    private static final String RESYNC_MESSAGE = "{\"type\":0,\"content\":\"部分消息已过期，请刷新\"}";
+
+    private static AlertLog alertLog;
+
+    private static final WebSocketMetrics metrics = new WebSocketMetrics();
+
+    private static WebSocketProperties webSocketProperties = new WebSocketProperties();
+
+    private static OrderMapper orderMapper;
+
+    //批量模式下窗口到期时发送合并帧的线程
+    private static final ScheduledExecutorService batchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ws-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public void setAlertLog(AlertLog alertLog) {
+        WebSocketServer.alertLog = alertLog;
+    }
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.webSocketProperties = webSocketProperties;
+    }
+
+    @Autowired
+    public void setOrderMapper(OrderMapper orderMapper) {
+        WebSocketServer.orderMapper = orderMapper;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        WebSocketPrincipal principal = principal(session);
+        if (principal == null) {
+            log.info("客户端：{}未登录，拒绝连接", sid);
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "unauthorized"));
+            } catch (IOException e) {
+                log.debug("关闭未登录的连接失败：{}", sid, e);
+            }
+            return;
+        }
+        //连接按 身份/sid 注册，不同身份使用相同的sid不会互相顶替
+        String key = key(session, sid);
+        log.info("客户端：{}建立连接", key);
+        ClientSession clientSession = new ClientSession(key, principal, session,
+                webSocketProperties.getSendQueueCapacity(), metrics);
+        List<String> batch = session.getRequestParameterMap().get("batch");
+        if (batch != null && batch.contains("1")) {
+            clientSession.enableBatching(webSocketProperties.getBatchWindowMillis(),
+                    webSocketProperties.getBatchMaxMessages(), batchScheduler);
+        }
+        ClientSession old = sessionMap.put(key, clientSession);
+        if (old != null && old.getSession() != session) {
+            //同一个sid重复连接，关闭旧连接
+            subscriptionRegistry.unsubscribeAll(old);
+            old.close(CloseReason.CloseCodes.NORMAL_CLOSURE, "replaced");
+        }
+
+        List<String> topics = session.getRequestParameterMap().get("topics");
+        if (topics == null || topics.isEmpty()) {
+            subscribe(clientSession, principal.isAdmin() ? TOPIC_SHOP : userTopic(principal.getId()));
+        } else {
+            for (String param : topics) {
+                for (String topic : param.split(",")) {
+                    subscribe(clientSession, topic.trim());
+                }
+            }
+        }
+
+        List<String> lastSeq = session.getRequestParameterMap().get("lastSeq");
+        if (lastSeq != null && !lastSeq.isEmpty()) {
+            replay(clientSession, lastSeq.get(0));
+        }
     }
 
     /**
@@ -36,8 +150,42 @@ public class WebSocketServer {
      * @param message 客户端发送过来的消息
      */
     @OnMessage
-    public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+    public void onMessage(String message, Session session, @PathParam("sid") String sid) {
+        String key = key(session, sid);
+        log.debug("收到来自客户端：{}的信息：{}", key, message);
+        ClientSession clientSession = key == null ? null : sessionMap.get(key);
+        if (clientSession == null) {
+            return;
+        }
+        clientSession.touch();
+        JSONObject jsonObject;
+        try {
+            jsonObject = JSON.parseObject(message);
+        } catch (JSONException e) {
+            return;
+        }
+        if (jsonObject == null) {
+            return;
+        }
+        String action = jsonObject.getString("action");
+        String topic = jsonObject.getString("topic");
+        if ("subscribe".equals(action)) {
+            subscribe(clientSession, topic);
+        } else if ("unsubscribe".equals(action) && topic != null) {
+            subscriptionRegistry.unsubscribe(clientSession, topic);
+        }
+    }
+
+    /**
+     * 收到客户端对ping的回复
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, Session session, @PathParam("sid") String sid) {
+        String key = key(session, sid);
+        ClientSession clientSession = key == null ? null : sessionMap.get(key);
+        if (clientSession != null) {
+            clientSession.touch();
+        }
     }
 
     /**
@@ -46,26 +194,257 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        String key = key(session, sid);
+        log.info("连接断开：{}", key != null ? key : sid);
+        if (key != null) {
+            remove(key, session);
+        }
+    }
+
+    /**
+     * 连接出错调用的方法
+     */
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("sid") String sid) {
+        String key = key(session, sid);
+        log.warn("连接异常：{}", key != null ? key : sid, error);
+        if (key != null) {
+            remove(key, session);
+        }
     }
 
     /**
-     * 群发
+     * 群发，消息进入各连接的发送队列后立即返回，不等待发送完成
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
+        for (ClientSession clientSession : sessionMap.values()) {
+            send(clientSession, message, null);
+        }
+    }
+
+    /**
+     * 向订阅了主题的客户端发送消息
+     *
+     * @param topic
+     * @param message
+     */
+    public void sendToTopic(String topic, String message) {
+        sendToTopic(topic, message, null);
+    }
+
+    @Override
+    public void deliver(long seq, String topic, String message, String collapseKey) {
+        sendToTopic(topic, message, collapseKey);
+    }
+
+    /**
+     * 向订阅了主题的客户端发送消息，批量模式的客户端在同一窗口内相同合并键的消息只收到一条
+     *
+     * @param topic
+     * @param message
+     * @param collapseKey 合并键，为null时不合并
+     */
+    public void sendToTopic(String topic, String message, String collapseKey) {
+        for (ClientSession clientSession : subscriptionRegistry.getSubscribers(topic)) {
+            send(clientSession, message, collapseKey);
+        }
+    }
+
+    /**
+     * 心跳检测：清理超时没有响应的连接，向其余连接发送ping
+     * 半开连接（客户端已断网但服务端未感知）不会再占用推送资源
+     */
+    public void heartbeat() {
+        long deadline = System.currentTimeMillis() - webSocketProperties.getHeartbeatTimeoutMillis();
+        for (ClientSession clientSession : sessionMap.values()) {
+            if (clientSession.getLastActiveMillis() < deadline) {
+                log.info("客户端：{}心跳超时，清理连接", clientSession.getSid());
+                metrics.recordReaped();
+                remove(clientSession.getSid(), clientSession.getSession());
+                clientSession.close(CloseReason.CloseCodes.GOING_AWAY, "heartbeat timeout");
+            } else {
+                clientSession.ping();
+            }
+        }
+    }
+
+    /**
+     * 某个订单状态的主题
+     */
+    public static String orderTopic(Long orderId) {
+        return "order:" + orderId;
+    }
+
+    /**
+     * 某个用户订单的主题
+     */
+    public static String userTopic(Long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * 连接与发送统计
+     *
+     * @return
+     */
+    public WebSocketStatsVO getStats() {
+        int queued = 0;
+        int maxDepth = 0;
+        for (ClientSession clientSession : sessionMap.values()) {
+            int depth = clientSession.getQueueDepth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return WebSocketStatsVO.builder()
+                .sessions(sessionMap.size())
+                .topics(subscriptionRegistry.getTopicCount())
+                .queuedMessages(queued)
+                .maxQueueDepth(maxDepth)
+                .sent(metrics.getSent())
+                .failed(metrics.getFailed())
+                .evicted(metrics.getEvicted())
+                .reaped(metrics.getReaped())
+                .avgSendMillis(metrics.getAvgSendMillis())
+                .maxSendMillis(metrics.getMaxSendMillis())
+                .build();
+    }
+
+    /**
+     * 发送消息，发送队列已满的慢客户端直接断开，由客户端重连
+     */
+    private void send(ClientSession clientSession, String message, String collapseKey) {
+        if (!clientSession.send(message, collapseKey)) {
+            log.warn("客户端：{}消费太慢，断开连接", clientSession.getSid());
+            metrics.recordEvicted();
+            remove(clientSession.getSid(), clientSession.getSession());
+            clientSession.close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer");
+        }
+    }
+
+    /**
+     * 补发客户端断线期间的消息，先订阅再补发，补发期间的新消息不会丢失
+     */
+    private void replay(ClientSession clientSession, String lastSeq) {
+        long seq;
+        try {
+            seq = Long.parseLong(lastSeq);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        List<AlertLog.Entry> missed = missedMessages(clientSession.getPrincipal(), seq, clientSession.getTopics());
+        //缺失太多时补发会撑满发送队列，同样让客户端刷新
+        if (missed == null || missed.size() > webSocketProperties.getSendQueueCapacity() / 2) {
+            send(clientSession, RESYNC_MESSAGE, null);
+            return;
+        }
+        log.info("客户端：{}重连，补发消息{}条", clientSession.getSid(), missed.size());
+        for (AlertLog.Entry entry : missed) {
+            send(clientSession, entry.getMessage(), null);
+        }
+    }
+
+    /**
+     * 订阅主题，无权订阅的主题忽略
+     */
+    private static void subscribe(ClientSession clientSession, String topic) {
+        if (topic == null || clientSession.getTopics().size() >= MAX_TOPICS_PER_SESSION) {
+            return;
+        }
+        if (canSubscribe(clientSession.getPrincipal(), topic)) {
+            subscriptionRegistry.subscribe(clientSession, topic);
+        } else {
+            log.info("客户端：{}无权订阅主题：{}", clientSession.getSid(), topic);
+        }
+    }
+
+    /**
+     * 查询断线期间的消息（WebSocket和SSE共用），补发前按订阅时相同的规则重新校验每个主题，只补发有权订阅的主题的消息
+     *
+     * @param principal
+     * @param lastSeq   客户端最后收到的序号
+     * @param topics    客户端订阅的主题
+     * @return 缺失的消息已无法补全时返回null
+     */
+    public static List<AlertLog.Entry> missedMessages(WebSocketPrincipal principal, long lastSeq, Collection<String> topics) {
+        Set<String> allowed = new HashSet<>();
+        for (String topic : topics) {
+            if (canSubscribe(principal, topic)) {
+                allowed.add(topic);
+            }
+        }
+        if (allowed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<AlertLog.Entry> missed = alertLog.since(lastSeq, allowed);
+        if (missed != null) {
+            missed.removeIf(entry -> !allowed.contains(entry.getTopic()));
+        }
+        return missed;
+    }
+
+    /**
+     * 是否有权订阅主题（WebSocket和SSE共用）：
+     * shop、board 只允许管理端；user:{用户id} 只允许该用户；order:{订单id} 只允许下单用户
+     *
+     * @param principal
+     * @param topic
+     * @return
+     */
+    public static boolean canSubscribe(WebSocketPrincipal principal, String topic) {
+        if (principal == null || topic == null) {
+            return false;
+        }
+        if (TOPIC_SHOP.equals(topic) || TOPIC_ORDER_BOARD.equals(topic)) {
+            return principal.isAdmin();
+        }
+        if (principal.isAdmin()) {
+            return false;
+        }
+        if (topic.matches("user:\\d+")) {
+            return topic.equals(userTopic(principal.getId()));
+        }
+        if (topic.matches("order:\\d+")) {
+            Orders orders;
             try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+                orders = orderMapper.getById(Long.valueOf(topic.substring("order:".length())));
+            } catch (NumberFormatException e) {
+                return false;
             }
+            return orders != null && principal.getId().equals(orders.getUserId());
         }
+        return false;
+    }
+
+    /**
+     * 握手时校验令牌得到的身份，令牌无效时为null
+     */
+    private static WebSocketPrincipal principal(Session session) {
+        Object principal = session.getUserProperties().get(WebSocketAuthConfigurator.PRINCIPAL);
+        return principal instanceof WebSocketPrincipal ? (WebSocketPrincipal) principal : null;
+    }
+
+    /**
+     * 连接注册表中的键：身份/sid，未登录的连接为null
+     */
+    private static String key(Session session, String sid) {
+        WebSocketPrincipal principal = principal(session);
+        return principal == null ? null : principal.getName() + "/" + sid;
+    }
+
+    /**
+     * 移除连接，只移除当前连接，不影响同一个sid后建立的新连接
+     */
+    private static void remove(String sid, Session session) {
+        sessionMap.computeIfPresent(sid, (key, clientSession) -> {
+            if (clientSession.getSession() != session) {
+                return clientSession;
+            }
+            subscriptionRegistry.unsubscribeAll(clientSession);
+            return null;
+        });
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package com.sky.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 百度地图桩接口：地理编码、驾车路线规划
+ * 地址按哈希值确定性地映射到中心点附近的坐标，同一地址每次解析结果相同，路线距离取直线距离的1.3倍
+ */
+public class BaiduMapStub {
+
+    //坐标中心点和最大偏移（度），0.04度约4.4公里，多数地址落在默认的5公里配送范围内
+    private static final double CENTER_LAT = 39.908;
+    private static final double CENTER_LNG = 116.397;
+    private static final double MAX_OFFSET = 0.04;
+
+    private static final double EARTH_RADIUS_METERS = 6371000;
+
+    /**
+     * GET /geocoding/v3?address=
+     */
+    public static void geocoding(HttpExchange exchange) throws IOException {
+        Map<String, String> params = StubServer.queryParams(exchange);
+        String address = params.get("address");
+        if (address == null || address.isEmpty()) {
+            StubServer.respond(exchange, 200, "{\"status\":2,\"msg\":\"Parameter Invalid\"}");
+            return;
+        }
+        int hash = address.hashCode();
+        double lat = CENTER_LAT + offset(hash);
+        double lng = CENTER_LNG + offset(hash >>> 16 | hash << 16);
+        StubServer.respond(exchange, 200, String.format(
+                "{\"status\":0,\"result\":{\"location\":{\"lng\":%.6f,\"lat\":%.6f},\"precise\":1,\"confidence\":80,\"comprehension\":100,\"level\":\"门址\"}}",
+                lng, lat));
+    }
+
+    /**
+     * GET /directionlite/v1/driving?origin=lat,lng&destination=lat,lng
+     */
+    public static void driving(HttpExchange exchange) throws IOException {
+        Map<String, String> params = StubServer.queryParams(exchange);
+        double[] origin = parse(params.get("origin"));
+        double[] destination = parse(params.get("destination"));
+        if (origin == null || destination == null) {
+            StubServer.respond(exchange, 200, "{\"status\":2,\"message\":\"Parameter Invalid\"}");
+            return;
+        }
+        int distance = (int) (distance(origin, destination) * 1.3);
+        //按每秒8米估算耗时
+        int duration = distance / 8;
+        StubServer.respond(exchange, 200, "{\"status\":0,\"message\":\"ok\",\"result\":{\"routes\":[{\"distance\":"
+                + distance + ",\"duration\":" + duration + "}]}}");
+    }
+
+    private static double offset(int hash) {
+        return (hash % 10000) / 10000.0 * MAX_OFFSET;
+    }
+
+    private static double[] parse(String lngLat) {
+        if (lngLat == null) {
+            return null;
+        }
+        String[] parts = lngLat.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double distance(double[] from, double[] to) {
+        double lat1 = Math.toRadians(from[0]);
+        double lat2 = Math.toRadians(to[0]);
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(to[1] - from[1]);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(h));
+    }
+}
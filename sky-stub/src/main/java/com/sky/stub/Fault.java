@@ -0,0 +1,128 @@
+package com.sky.stub;
+
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一组桩接口（地图、微信登录、微信支付）的故障注入配置，同时作为这组接口的处理器包装
+ * 每个请求先等待 latencyMillis + [0, jitterMillis) 毫秒，
+ * 再按 timeoutRate 的概率挂起 timeoutMillis 毫秒后返回504（模拟超时），按 errorRate 的概率返回500
+ */
+public class Fault {
+
+    private final String name;
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile double timeoutRate;
+    private volatile long timeoutMillis;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param name 名称，也是启动参数和运行时配置的前缀，例如 --map.latency-millis=200
+     * @param defaults 所有接口共用的默认配置
+     * @param args 启动参数
+     */
+    public Fault(String name, Fault defaults, Map<String, String> args) {
+        this.name = name;
+        if (defaults != null) {
+            latencyMillis = defaults.latencyMillis;
+            jitterMillis = defaults.jitterMillis;
+            errorRate = defaults.errorRate;
+            timeoutRate = defaults.timeoutRate;
+            timeoutMillis = defaults.timeoutMillis;
+        } else {
+            timeoutMillis = 10000;
+        }
+        update(args, defaults == null ? "" : name + ".");
+    }
+
+    /**
+     * 修改配置，参数名为 latency-millis、jitter-millis、error-rate、timeout-rate、timeout-millis
+     *
+     * @param params
+     * @param prefix 参数名前缀
+     */
+    public void update(Map<String, String> params, String prefix) {
+        String value;
+        if ((value = params.get(prefix + "latency-millis")) != null) {
+            latencyMillis = Long.parseLong(value);
+        }
+        if ((value = params.get(prefix + "jitter-millis")) != null) {
+            jitterMillis = Long.parseLong(value);
+        }
+        if ((value = params.get(prefix + "error-rate")) != null) {
+            errorRate = Double.parseDouble(value);
+        }
+        if ((value = params.get(prefix + "timeout-rate")) != null) {
+            timeoutRate = Double.parseDouble(value);
+        }
+        if ((value = params.get(prefix + "timeout-millis")) != null) {
+            timeoutMillis = Long.parseLong(value);
+        }
+    }
+
+    /**
+     * 包装接口处理器，在调用之前注入延迟和故障
+     *
+     * @param handler
+     * @return
+     */
+    public HttpHandler wrap(HttpHandler handler) {
+        return exchange -> {
+            requests.increment();
+            try {
+                StubServer.drain(exchange);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                sleep(latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis) : 0));
+                if (random.nextDouble() < timeoutRate) {
+                    timeouts.increment();
+                    sleep(timeoutMillis);
+                    StubServer.respond(exchange, 504, "{\"message\":\"stub timeout\"}");
+                    return;
+                }
+                if (random.nextDouble() < errorRate) {
+                    errors.increment();
+                    StubServer.respond(exchange, 500, "{\"message\":\"stub error\"}");
+                    return;
+                }
+                handler.handle(exchange);
+            } catch (IOException e) {
+                //客户端超时后断开连接，写响应失败，忽略
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    public String toJson() {
+        return "{\"name\":\"" + name + "\""
+                + ",\"latencyMillis\":" + latencyMillis
+                + ",\"jitterMillis\":" + jitterMillis
+                + ",\"errorRate\":" + errorRate
+                + ",\"timeoutRate\":" + timeoutRate
+                + ",\"timeoutMillis\":" + timeoutMillis
+                + ",\"requests\":" + requests.sum()
+                + ",\"errors\":" + errors.sum()
+                + ",\"timeouts\":" + timeouts.sum() + "}";
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
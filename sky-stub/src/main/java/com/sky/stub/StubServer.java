@@ -0,0 +1,151 @@
+package com.sky.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * 外部接口桩服务，用于在没有网络的环境下压测下单、支付、登录流程
+ * 启动：java -jar sky-stub/target/sky-stub.jar --port=9090 --latency-millis=50 --jitter-millis=20 --error-rate=0.01
+ * 单独配置某组接口：--map.latency-millis=300 --wechat.error-rate=0.1 --pay.timeout-rate=0.05（map、wechat、pay）
+ * 运行中修改配置：GET /stub/config?service=map&error-rate=0.5，不带参数时返回当前配置和请求统计
+ * sky-server 使用 --spring.profiles.active=dev,stub 启动后，外部接口都指向本服务
+ */
+public class StubServer {
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseArgs(args);
+        int port = Integer.parseInt(options.getOrDefault("port", "9090"));
+        //故障注入通过sleep实现，每个挂起的请求占用一个线程
+        int threads = Integer.parseInt(options.getOrDefault("threads", "200"));
+
+        Fault defaults = new Fault("default", null, options);
+        Map<String, Fault> faults = new LinkedHashMap<>();
+        Fault map = new Fault("map", defaults, options);
+        Fault wechat = new Fault("wechat", defaults, options);
+        Fault pay = new Fault("pay", defaults, options);
+        faults.put("map", map);
+        faults.put("wechat", wechat);
+        faults.put("pay", pay);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.createContext("/geocoding/v3", map.wrap(BaiduMapStub::geocoding));
+        server.createContext("/directionlite/v1/driving", map.wrap(BaiduMapStub::driving));
+        server.createContext("/sns/jscode2session", wechat.wrap(WeChatStub::login));
+        server.createContext("/v3/pay/transactions/jsapi", pay.wrap(WeChatStub::jsapi));
+        server.createContext("/v3/refund/domestic/refunds", pay.wrap(WeChatStub::refund));
+        server.createContext("/stub/config", exchange -> {
+            try {
+                Map<String, String> params = queryParams(exchange);
+                String service = params.get("service");
+                for (Map.Entry<String, Fault> entry : faults.entrySet()) {
+                    if (service == null || service.equals(entry.getKey())) {
+                        entry.getValue().update(params, "");
+                    }
+                }
+                StringBuilder json = new StringBuilder("[");
+                for (Fault fault : faults.values()) {
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    json.append(fault.toJson());
+                }
+                respond(exchange, 200, json.append(']').toString());
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, "{\"message\":\"" + escape(e.getMessage()) + "\"}");
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        System.out.println("stub server started on port " + port);
+        for (Fault fault : faults.values()) {
+            System.out.println(fault.toJson());
+        }
+    }
+
+    /**
+     * 解析 --key=value 形式的启动参数
+     */
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    static Map<String, String> queryParams(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * 读完请求体，连接才能被客户端复用
+     */
+    static void drain(HttpExchange exchange) throws IOException {
+        InputStream inputStream = exchange.getRequestBody();
+        byte[] buffer = new byte[4096];
+        while (inputStream.read(buffer) != -1) {
+            //丢弃
+        }
+    }
+
+    static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
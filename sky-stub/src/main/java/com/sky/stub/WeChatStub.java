@@ -0,0 +1,48 @@
+package com.sky.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 微信登录、微信支付桩接口
+ */
+public class WeChatStub {
+
+    /**
+     * GET /sns/jscode2session?js_code=
+     * openid由js_code确定，压测脚本用不同的code模拟不同的用户
+     */
+    public static void login(HttpExchange exchange) throws IOException {
+        Map<String, String> params = StubServer.queryParams(exchange);
+        String code = params.get("js_code");
+        if (code == null || code.isEmpty()) {
+            StubServer.respond(exchange, 200, "{\"errcode\":40029,\"errmsg\":\"invalid code\"}");
+            return;
+        }
+        StubServer.respond(exchange, 200, "{\"openid\":\"stub-" + StubServer.escape(code)
+                + "\",\"session_key\":\"stub-session-key\"}");
+    }
+
+    /**
+     * POST /v3/pay/transactions/jsapi
+     */
+    public static void jsapi(HttpExchange exchange) throws IOException {
+        StubServer.respond(exchange, 200, "{\"prepay_id\":\"wx" + randomId() + "\"}");
+    }
+
+    /**
+     * POST /v3/refund/domestic/refunds
+     */
+    public static void refund(HttpExchange exchange) throws IOException {
+        StubServer.respond(exchange, 200, "{\"refund_id\":\"5" + randomId() + "\",\"channel\":\"ORIGINAL\","
+                + "\"status\":\"PROCESSING\",\"create_time\":\"" + OffsetDateTime.now() + "\"}");
+    }
+
+    private static String randomId() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 28);
+    }
+}
@@ -0,0 +1,25 @@
+-- 购物车同一用户同一商品（菜品+口味 / 套餐）只保留一条记录，配合 insert ... on duplicate key update 实现原子的加减
+-- dish_id、setmeal_id、dish_flavor 可能为null，唯一索引中null互不相等，因此用生成列 item_key 拼接后建唯一索引
+
+-- 1. 合并已存在的重复记录：数量累加到id最小的一条上，删除其余记录
+update shopping_cart sc
+    join (select min(id) id, sum(number) total
+          from shopping_cart
+          group by user_id, dish_id, setmeal_id, dish_flavor
+          having count(*) > 1) dup on sc.id = dup.id
+set sc.number = dup.total;
+
+delete sc
+from shopping_cart sc
+         join shopping_cart keep
+              on sc.user_id = keep.user_id
+                  and sc.dish_id <=> keep.dish_id
+                  and sc.setmeal_id <=> keep.setmeal_id
+                  and sc.dish_flavor <=> keep.dish_flavor
+                  and sc.id > keep.id;
+
+-- 2. 增加商品标识生成列和唯一索引
+alter table shopping_cart
+    add column item_key varchar(100)
+        generated always as (concat(ifnull(dish_id, ''), ':', ifnull(setmeal_id, ''), ':', ifnull(dish_flavor, ''))) stored,
+    add unique key uk_user_item (user_id, item_key);
@@ -0,0 +1,9 @@
+-- 购物车最后修改时间：插入时为当前时间，数量变化（on duplicate key update、减一份）时由 on update 自动更新
+-- redis存储方式下购物车每次改动后整体回写（先删后插），回写时间即最后修改时间
+-- 清理废弃购物车时按用户取最后修改时间，整车删除，不再按加入时间删除单个商品
+alter table shopping_cart
+    add column update_time datetime not null default current_timestamp on update current_timestamp;
+
+update shopping_cart set update_time = ifnull(create_time, now());
+
+alter table shopping_cart add index idx_user_update_time (user_id, update_time);
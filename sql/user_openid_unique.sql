@@ -0,0 +1,3 @@
+-- 同一个openid只能注册一个用户，多个实例同时处理同一新用户的首次登录时，后插入的一方失败后改为查询已注册的用户
+-- 执行前先确认没有重复数据：select openid, count(*) from user group by openid having count(*) > 1;
+alter table user add unique key uk_openid (openid);